@@ -0,0 +1,221 @@
+package ws.m4ktub.quacking;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The compiled form of a curry configuration. The configuration is a template
+ * with constants and holes, marked with {@link Invocation#CURRY_MISS}. The
+ * arguments of the interface method fill the holes, in order, and the
+ * remaining arguments are passed after the template.
+ *
+ * <p>
+ * The positions of the constants and holes are found once so that the final
+ * arguments, and their types, are obtained without searching the template.
+ * When the method is invoked through a method handle, the constants are
+ * inserted into the handle and the arguments of the interface method are
+ * passed as they are.
+ *
+ * @author m4ktub
+ * @see Mixed#curry(String, Class[], Object[])
+ */
+public final class CurryPlan {
+
+	private final Object[] template;
+	private final Class<?>[] types;
+	private final Type[] argTypes;
+	private final int holes;
+	private final ConcurrentMap<Method, Class<?>[]> parameterTypes = new ConcurrentHashMap<Method, Class<?>[]>();
+
+	private CurryPlan(Class<?>[] types, Object[] template) {
+		this.template = template.clone();
+		this.types = new Class<?>[template.length];
+		this.argTypes = new Type[template.length];
+
+		int holeCount = 0;
+		for (int i = 0; i < template.length; i++) {
+			if (template[i] == Invocation.CURRY_MISS) {
+				holeCount++;
+				continue;
+			}
+
+			Class<?> type = types != null && i < types.length ? types[i] : null;
+			if (type == null) {
+				type = template[i] == null ? Object.class : template[i].getClass();
+			}
+
+			this.types[i] = type;
+			this.argTypes[i] = template[i] != null ? template[i].getClass() : type;
+		}
+
+		this.holes = holeCount;
+	}
+
+	/**
+	 * Compiles a curry configuration.
+	 *
+	 * @param types
+	 *            The types of the method parameters that receive the
+	 *            constants. The type of a constant is used if not given.
+	 * @param args
+	 *            The template with the constants and holes.
+	 * @return The plan or <code>null</code> if there is nothing to curry.
+	 */
+	public static CurryPlan of(Class<?>[] types, Object[] args) {
+		if (args == null || args.length == 0) {
+			return null;
+		}
+
+		return new CurryPlan(types, args);
+	}
+
+	/**
+	 * @return The template with the constants and holes. The array is shared
+	 *         and must not be modified.
+	 */
+	public Object[] getTemplate() {
+		return template;
+	}
+
+	/**
+	 * Checks if the interface method has enough arguments to fill the holes.
+	 * The same configuration applies to overloads with different arities.
+	 *
+	 * @param intfArity
+	 *            The number of parameters of the interface method.
+	 * @return <code>true</code> if there are no more holes than arguments.
+	 */
+	public boolean accepts(int intfArity) {
+		return holes <= intfArity;
+	}
+
+	/**
+	 * @param intfArity
+	 *            The number of parameters of the interface method.
+	 * @return The number of parameters of the curried method.
+	 */
+	public int getArity(int intfArity) {
+		return template.length + intfArity - holes;
+	}
+
+	/**
+	 * Obtains the parameter types of the curried method. The result is
+	 * computed once for each interface method.
+	 *
+	 * @param intfMethod
+	 *            The interface method.
+	 * @return The parameter types to search for, or <code>null</code> if the
+	 *         interface method does not fill the holes. The array is shared
+	 *         and must not be modified.
+	 * @see #accepts(int)
+	 */
+	public Class<?>[] getParameterTypes(Method intfMethod) {
+		Class<?>[] result = parameterTypes.get(intfMethod);
+		if (result == null) {
+			Class<?>[] intfTypes = intfMethod.getParameterTypes();
+			if (!accepts(intfTypes.length)) {
+				return null;
+			}
+
+			result = new Class<?>[getArity(intfTypes.length)];
+			fill(types, intfTypes, result);
+			parameterTypes.putIfAbsent(intfMethod, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Obtains the types used to find the curried method through
+	 * multi-dispatch.
+	 *
+	 * @param intfArgTypes
+	 *            The types of the interface arguments.
+	 * @return The types of the constants and arguments, or <code>null</code>
+	 *         if there are not enough types to fill the holes.
+	 */
+	public Type[] getArgumentTypes(Type[] intfArgTypes) {
+		if (!accepts(intfArgTypes.length)) {
+			return null;
+		}
+
+		Type[] result = new Type[getArity(intfArgTypes.length)];
+		fill(argTypes, intfArgTypes, result);
+		return result;
+	}
+
+	/**
+	 * Creates the arguments of the curried method.
+	 *
+	 * @param intfArgs
+	 *            The arguments of the interface method or <code>null</code>
+	 *            if there are no arguments.
+	 * @return The constants and arguments.
+	 * @throws IllegalArgumentException
+	 *             If there are not enough arguments to fill the holes.
+	 */
+	public Object[] apply(Object[] intfArgs) {
+		if (intfArgs == null) {
+			intfArgs = new Object[0];
+		}
+
+		if (!accepts(intfArgs.length)) {
+			String message = String.format("Expected at least %d arguments but got %d.", holes, intfArgs.length);
+			throw new IllegalArgumentException(message);
+		}
+
+		Object[] result = new Object[getArity(intfArgs.length)];
+		fill(template, intfArgs, result);
+		return result;
+	}
+
+	/**
+	 * Inserts the constants in a method handle.
+	 *
+	 * @param fixedHandle
+	 *            A handle that invokes the curried method, receiving each
+	 *            argument as an <tt>Object</tt>.
+	 * @return A handle with the <tt>(Object[])Object</tt> type that receives
+	 *         only the arguments of the interface method.
+	 */
+	public MethodHandle bind(MethodHandle fixedHandle) {
+		return bind(fixedHandle, 0);
+	}
+
+	/**
+	 * Inserts the constants in a method handle that receives some leading
+	 * arguments, such as the target, before the arguments of the method.
+	 *
+	 * @param fixedHandle
+	 *            A handle that receives the leading arguments and each
+	 *            argument of the curried method as an <tt>Object</tt>.
+	 * @param leading
+	 *            The number of leading arguments, kept as they are.
+	 * @return A handle that receives the leading arguments and an
+	 *         <tt>Object[]</tt> with the arguments of the interface method.
+	 */
+	MethodHandle bind(MethodHandle fixedHandle, int leading) {
+		MethodHandle handle = fixedHandle;
+		for (int i = template.length - 1; i >= 0; i--) {
+			if (template[i] != Invocation.CURRY_MISS) {
+				handle = MethodHandles.insertArguments(handle, leading + i, template[i]);
+			}
+		}
+
+		return handle.asSpreader(Object[].class, handle.type().parameterCount() - leading);
+	}
+
+	private <T> void fill(T[] constants, T[] values, T[] result) {
+		int next = 0;
+		for (int i = 0; i < template.length; i++) {
+			result[i] = template[i] == Invocation.CURRY_MISS ? values[next++] : constants[i];
+		}
+
+		System.arraycopy(values, next, result, template.length, values.length - next);
+	}
+
+}
@@ -0,0 +1,543 @@
+package ws.m4ktub.quacking;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import ws.m4ktub.quacking.helpers.ClassMetadata;
+import ws.m4ktub.quacking.helpers.ClassMetadata.MethodInfo;
+import ws.m4ktub.quacking.helpers.Reflections;
+
+/**
+ * The resolution of all the methods of an interface, or set of interfaces, in
+ * a mixin. The table is built the first time the interfaces are used and has
+ * a slot for each method that can be called on a proxy of the interfaces.
+ * Methods with the same signature in several interfaces share the same slot. Each slot either holds the
+ * resolved invocation or, when the resolution depends on the arguments, the
+ * mixed instances that must be tried on each call.
+ *
+ * <p>
+ * The methods and their positions only depend on the interfaces, so they are
+ * found once and shared by the tables of all mixins. Each slot is resolved
+ * when the method is first called, so a mixin that only uses a few methods
+ * of a large interface does not resolve all the others. Tables of frozen
+ * mixins are resolved completely when created.
+ *
+ * <p>
+ * The table describes a particular version of the mixin. It must be replaced
+ * when instances are mixed or configured.
+ *
+ * @author m4ktub
+ */
+class DispatchTable {
+
+	private static final Method EQUALS;
+
+	static {
+		try {
+			EQUALS = Object.class.getMethod("equals", Object.class);
+		} catch (NoSuchMethodException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/**
+	 * The dispatch logic for a single interface method.
+	 */
+	abstract static class Slot {
+
+		protected final Method intfMethod;
+
+		public Slot(Method intfMethod) {
+			this.intfMethod = intfMethod;
+		}
+
+		/**
+		 * @return The resolved invocation or <code>null</code> if the method
+		 *         is only resolved when called.
+		 */
+		public Invocation getInvocation() {
+			return null;
+		}
+
+		/**
+		 * @return The resolved mixed instance or <code>null</code> if the
+		 *         method is only resolved when called.
+		 */
+		public Mixed getMixed() {
+			return null;
+		}
+
+		public abstract Object invoke(Object proxy, Object[] args) throws Throwable;
+
+		protected Object proceed(Mixed mixed, Invocation invocation, Object[] args) throws Throwable {
+			try {
+				return invocation.proceeed(args);
+			} catch (IllegalAccessException e) {
+				// found method but could not invoke it
+				String message = String.format("The mixin failed to invoke method %s on %s. The method was not accessible.", intfMethod, mixed);
+				throw new UnsupportedOperationException(message, e);
+			}
+		}
+
+		protected Object unsupported() {
+			String message = String.format("The mixin does not support the method %s. The implemented method must be public and accept the same arguments.", intfMethod);
+			throw new UnsupportedOperationException(message);
+		}
+
+	}
+
+	/**
+	 * A method that is always invoked in the same way.
+	 */
+	static class ResolvedSlot extends Slot {
+
+		private final Mixed mixed;
+		private final Invocation invocation;
+
+		public ResolvedSlot(Method intfMethod, Mixed mixed, Invocation invocation) {
+			super(intfMethod);
+			this.mixed = mixed;
+			this.invocation = invocation;
+		}
+
+		@Override
+		public Invocation getInvocation() {
+			return invocation;
+		}
+
+		@Override
+		public Mixed getMixed() {
+			return mixed;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Object[] args) throws Throwable {
+			return proceed(mixed, invocation, args);
+		}
+
+	}
+
+	/**
+	 * A method resolved, on each call, by the first mixed instance that has a
+	 * compatible method for the actual arguments. The last resort is an
+	 * instance that answers to any arguments.
+	 *
+	 * <p>
+	 * The slot remembers the resolution for the classes of the arguments of
+	 * the last few calls. Those resolutions are found by comparing the classes
+	 * of the arguments by identity, without allocating objects. When more
+	 * combinations of argument classes than the size of the inline cache are
+	 * used, the slot stops remembering and always resolves the call.
+	 */
+	static class MultiDispatchSlot extends Slot {
+
+		private static final InlineEntry[] EMPTY = new InlineEntry[0];
+
+		private final Mixed[] candidates;
+		private final ResolvedSlot fallback;
+		private final int inlineCacheSize;
+
+		// replaced as a whole so that races can only lose entries
+		private volatile InlineEntry[] entries = EMPTY;
+		private volatile boolean megamorphic;
+
+		public MultiDispatchSlot(Method intfMethod, Mixed[] candidates, ResolvedSlot fallback, int inlineCacheSize) {
+			super(intfMethod);
+			this.candidates = candidates;
+			this.fallback = fallback;
+			this.inlineCacheSize = inlineCacheSize;
+			this.megamorphic = inlineCacheSize == 0;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Object[] args) throws Throwable {
+			if (!megamorphic) {
+				InlineEntry[] current = entries;
+				for (int i = 0; i < current.length; i++) {
+					InlineEntry entry = current[i];
+					if (entry.matches(args)) {
+						return entry.invocation == null ? unsupported() : proceed(entry.mixed, entry.invocation, args);
+					}
+				}
+			}
+
+			for (int i = 0; i < candidates.length; i++) {
+				Mixed mixed = candidates[i];
+
+				Invocation invocation = Reflections.getMethodInvocation(mixed, intfMethod, args);
+				if (invocation != null) {
+					remember(args, mixed, invocation);
+					return proceed(mixed, invocation, args);
+				}
+			}
+
+			if (fallback != null) {
+				remember(args, fallback.getMixed(), fallback.getInvocation());
+				return fallback.invoke(proxy, args);
+			}
+
+			remember(args, null, null);
+			return unsupported();
+		}
+
+		private void remember(Object[] args, Mixed mixed, Invocation invocation) {
+			if (megamorphic) {
+				return;
+			}
+
+			InlineEntry[] current = entries;
+			if (current.length >= inlineCacheSize) {
+				megamorphic = true;
+				entries = EMPTY;
+				return;
+			}
+
+			InlineEntry[] updated = Arrays.copyOf(current, current.length + 1);
+			updated[current.length] = new InlineEntry(args, mixed, invocation);
+			entries = updated;
+		}
+
+		/**
+		 * @return <code>true</code> if the slot stopped remembering
+		 *         resolutions because too many combinations of argument
+		 *         classes were used.
+		 */
+		public boolean isMegamorphic() {
+			return megamorphic;
+		}
+
+	}
+
+	/**
+	 * The resolution of a call for a particular combination of argument
+	 * classes. A <code>null</code> class represents a <code>null</code>
+	 * argument.
+	 */
+	private static final class InlineEntry {
+
+		private final Class<?>[] argClasses;
+		private final Mixed mixed;
+		private final Invocation invocation;
+
+		public InlineEntry(Object[] args, Mixed mixed, Invocation invocation) {
+			int length = args == null ? 0 : args.length;
+
+			this.argClasses = new Class<?>[length];
+			for (int i = 0; i < length; i++) {
+				argClasses[i] = args[i] == null ? null : args[i].getClass();
+			}
+
+			this.mixed = mixed;
+			this.invocation = invocation;
+		}
+
+		public boolean matches(Object[] args) {
+			int length = args == null ? 0 : args.length;
+			if (length != argClasses.length) {
+				return false;
+			}
+
+			for (int i = 0; i < length; i++) {
+				Object arg = args[i];
+				if ((arg == null ? null : arg.getClass()) != argClasses[i]) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+	}
+
+	/**
+	 * A method that no mixed instance implements.
+	 */
+	static class UnsupportedSlot extends Slot {
+
+		public UnsupportedSlot(Method intfMethod) {
+			super(intfMethod);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Object[] args) throws Throwable {
+			return unsupported();
+		}
+
+	}
+
+	/**
+	 * Ensures the special case of <tt>proxy.equals(proxy)</tt> before
+	 * delegating to the mixed instances.
+	 */
+	static class EqualsSlot extends Slot {
+
+		private final Slot delegate;
+
+		public EqualsSlot(Slot delegate) {
+			super(EQUALS);
+			this.delegate = delegate;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Object[] args) throws Throwable {
+			if (args[0] == proxy) {
+				return true;
+			}
+
+			return delegate.invoke(proxy, args);
+		}
+
+	}
+
+	/**
+	 * The methods that a proxy of a set of interfaces implements, in order,
+	 * and the position of each method.
+	 */
+	private static final class Layout {
+
+		private final List<Method> methods;
+		private final Map<Method, Integer> ordinals;
+
+		public Layout(Class<?>[] kinds) {
+			this.ordinals = new HashMap<Method, Integer>();
+			this.methods = Collections.unmodifiableList(getMethods(kinds, ordinals));
+		}
+
+	}
+
+	private static final ClassValue<ConcurrentMap<List<Class<?>>, Layout>> layouts = new ClassValue<ConcurrentMap<List<Class<?>>, Layout>>() {
+		@Override
+		protected ConcurrentMap<List<Class<?>>, Layout> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<List<Class<?>>, Layout>();
+		}
+	};
+
+	private final Mixin mixin;
+	private final int version;
+	private final List<Method> methods;
+	private final Map<Method, Integer> ordinals;
+
+	// resolved on first use and races only resolve twice
+	private final Slot[] slots;
+
+	/**
+	 * Creates the table of the interfaces in the current state of the mixin.
+	 *
+	 * @param mixin
+	 *            The mixin providing the implementations.
+	 * @param kinds
+	 *            The interfaces being used.
+	 * @param version
+	 *            The version of the mixin being resolved.
+	 */
+	public DispatchTable(Mixin mixin, Class<?>[] kinds, int version) {
+		Layout layout = getLayout(kinds);
+
+		this.mixin = mixin;
+		this.version = version;
+		this.methods = layout.methods;
+		this.ordinals = layout.ordinals;
+		this.slots = new Slot[methods.size()];
+
+		if (mixin.isFrozen()) {
+			for (int i = 0; i < slots.length; i++) {
+				getSlot(i);
+			}
+		}
+	}
+
+	/**
+	 * Obtains the shared layout of the interfaces. The layout is kept by an
+	 * interface that can see all the others, so that no class loader is kept
+	 * alive by a class loader that does not reference it.
+	 */
+	private static Layout getLayout(Class<?>[] kinds) {
+		for (Class<?> anchor : kinds) {
+			ClassLoader classLoader = anchor.getClassLoader();
+
+			boolean seesAll = true;
+			for (Class<?> other : kinds) {
+				seesAll &= Reflections.isVisible(classLoader, other);
+			}
+
+			if (seesAll) {
+				ConcurrentMap<List<Class<?>>, Layout> registry = layouts.get(anchor);
+				List<Class<?>> key = Arrays.<Class<?>> asList(kinds.clone());
+
+				Layout layout = registry.get(key);
+				if (layout == null) {
+					layout = new Layout(kinds);
+
+					Layout existing = registry.putIfAbsent(key, layout);
+					layout = existing != null ? existing : layout;
+				}
+
+				return layout;
+			}
+		}
+
+		return new Layout(kinds);
+	}
+
+	/**
+	 * Obtains all the methods that a proxy of the interfaces implements,
+	 * starting with the methods from {@link Object} and {@link DuckType}.
+	 * Methods with the same signature are represented only once.
+	 *
+	 * @param kinds
+	 *            The interfaces, in order.
+	 * @param ordinals
+	 *            Receives the position of each method, including those that
+	 *            share the signature of a previous method.
+	 * @return The list of methods with distinct signatures.
+	 */
+	private static List<Method> getMethods(Class<?>[] kinds, Map<Method, Integer> ordinals) {
+		ClassMetadata objectMetadata = ClassMetadata.of(Object.class);
+
+		List<MethodInfo> candidates = new ArrayList<MethodInfo>();
+		candidates.add(objectMetadata.getMethod("hashCode", new Class<?>[0]));
+		candidates.add(objectMetadata.getMethod("equals", EQUALS.getParameterTypes()));
+		candidates.add(objectMetadata.getMethod("toString", new Class<?>[0]));
+		candidates.addAll(ClassMetadata.of(DuckType.class).getMethods());
+
+		for (Class<?> kind : kinds) {
+			candidates.addAll(ClassMetadata.of(kind).getMethods());
+		}
+
+		Map<List<Object>, Integer> signatures = new LinkedHashMap<List<Object>, Integer>();
+		List<Method> methods = new ArrayList<Method>();
+
+		for (MethodInfo info : candidates) {
+			if (info.isStatic()) {
+				continue;
+			}
+
+			List<Object> signature = new ArrayList<Object>();
+			signature.add(info.getName());
+			signature.addAll(Arrays.asList(info.getParameterTypes()));
+
+			Integer ordinal = signatures.get(signature);
+			if (ordinal == null) {
+				ordinal = methods.size();
+				signatures.put(signature, ordinal);
+				methods.add(info.getMethod());
+			}
+
+			ordinals.put(info.getMethod(), ordinal);
+		}
+
+		return methods;
+	}
+
+	private static Slot resolve(Mixin mixin, Method intfMethod) {
+		Class<?> intf = intfMethod.getDeclaringClass();
+
+		// handle DuckType interface explicitly with mixin
+		if (intf == DuckType.class) {
+			Mixed self = new Mixed(mixin);
+			return new ResolvedSlot(intfMethod, self, new Invocation(mixin, null, intfMethod, null));
+		}
+
+		// try instances in order, stopping at the first that always answers
+		List<Mixed> candidates = new ArrayList<Mixed>();
+		ResolvedSlot fallback = null;
+
+		for (Mixed mixed : mixin.getMixed(intf)) {
+			Invocation invocation = Reflections.getStaticInvocation(mixed, intfMethod);
+			if (invocation != null) {
+				fallback = new ResolvedSlot(intfMethod, mixed, invocation);
+				break;
+			}
+
+			if (Reflections.isMultiDispatchCandidate(mixed, intfMethod)) {
+				candidates.add(mixed);
+			}
+		}
+
+		Slot slot;
+		if (candidates.isEmpty()) {
+			slot = fallback != null ? fallback : new UnsupportedSlot(intfMethod);
+		} else {
+			slot = new MultiDispatchSlot(intfMethod, candidates.toArray(new Mixed[candidates.size()]), fallback, mixin.getInlineCacheSize());
+		}
+
+		return intfMethod.equals(EQUALS) ? new EqualsSlot(slot) : slot;
+	}
+
+	/**
+	 * @return The version of the mixin this table was resolved for.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return The methods in the table, in the order of their slots.
+	 */
+	public List<Method> getMethods() {
+		return methods;
+	}
+
+	/**
+	 * Obtains the slot for the method at the given position, resolving the
+	 * method on first use.
+	 *
+	 * @param ordinal
+	 *            The position of the method in {@link #getMethods()}.
+	 * @return The slot.
+	 */
+	public Slot getSlot(int ordinal) {
+		Slot slot = slots[ordinal];
+		if (slot == null) {
+			slot = resolve(mixin, methods.get(ordinal));
+			slots[ordinal] = slot;
+		}
+
+		return slot;
+	}
+
+	/**
+	 * @param method
+	 *            Any method from the interfaces, their super interfaces,
+	 *            {@link DuckType} or {@link Object}.
+	 * @return The position of the method in {@link #getMethods()} or
+	 *         <tt>-1</tt> if the method is not part of the interfaces.
+	 */
+	public int getOrdinal(Method method) {
+		Integer ordinal = ordinals.get(method);
+		return ordinal == null ? -1 : ordinal;
+	}
+
+	/**
+	 * Invokes a method of the interface.
+	 *
+	 * @param proxy
+	 *            The proxy where the method was called.
+	 * @param method
+	 *            Any method from the interfaces, their super interfaces,
+	 *            {@link DuckType} or {@link Object}.
+	 * @param args
+	 *            The arguments of the call.
+	 * @return The result of the call.
+	 * @throws Throwable
+	 *             Any error thrown by the implementation.
+	 */
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		Integer ordinal = ordinals.get(method);
+		if (ordinal == null) {
+			String message = String.format("The method %s is not part of the interface.", method);
+			throw new UnsupportedOperationException(message);
+		}
+
+		return getSlot(ordinal).invoke(proxy, args);
+	}
+
+}
@@ -0,0 +1,124 @@
+package ws.m4ktub.quacking;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+
+/**
+ * A {@link DuckHandleWing} that receives the arguments of methods with few
+ * parameters individually, instead of in an array. For those methods, the
+ * wing also receives a method handle, bound to the target, that accepts the
+ * same arguments individually. The invocation can then be wrapped without
+ * allocating arrays.
+ *
+ * <pre>
+ * mixin.mix(new Greeter()).around(&quot;greet&quot;, new DuckArityWing() {
+ * 	public Object wrap1(Object target, Method method, MethodHandle handle, Object arg) throws Throwable {
+ * 		log(method, arg);
+ * 		return handle.invokeExact(arg);
+ * 	}
+ *
+ * 	public Object wrap(Object target, Method method, MethodHandle handle, Object[] args) throws Throwable {
+ * 		log(method, args);
+ * 		return handle.invokeExact(args);
+ * 	}
+ * });
+ * </pre>
+ *
+ * <p>
+ * The handles have the generic type, with an <tt>Object</tt> for each
+ * parameter and returning an <tt>Object</tt>, so they can be called with
+ * <tt>invokeExact</tt>. Only the <tt>wrapN</tt> methods overridden by the
+ * wing are used. Other invocations, including those of methods with more
+ * parameters, are given to
+ * {@link #wrap(Object, Method, MethodHandle, Object[])}.
+ *
+ * @author m4ktub
+ * @see Mixed#around(String, DuckWing...)
+ */
+public abstract class DuckArityWing extends DuckHandleWing {
+
+	/**
+	 * The maximum number of parameters for which arguments are given
+	 * individually.
+	 */
+	public static final int MAX_ARITY = 4;
+
+	/**
+	 * Adapts any wing to this contract. The adapted wing receives the
+	 * arguments in an array, as it always did.
+	 *
+	 * @param wing
+	 *            The wing to adapt.
+	 * @return The same wing, if it already has this contract, or a wing that
+	 *         delegates to the given wing.
+	 */
+	public static DuckArityWing adapt(final DuckWing wing) {
+		if (wing instanceof DuckArityWing) {
+			return (DuckArityWing) wing;
+		}
+
+		return new DuckArityWing() {
+			@Override
+			public Object wrap(Object target, Method method, MethodHandle handle, Object[] args) throws Throwable {
+				if (wing instanceof DuckHandleWing) {
+					return ((DuckHandleWing) wing).wrap(target, method, handle, args);
+				}
+
+				return wing.wrap(target, method, args);
+			}
+		};
+	}
+
+	/**
+	 * Wraps the invocation of a method without parameters.
+	 *
+	 * @param target
+	 *            The target instance of the invocation.
+	 * @param method
+	 *            The selected method to invoke.
+	 * @param handle
+	 *            A handle with the <tt>()Object</tt> type that invokes the
+	 *            method on the target.
+	 * @return The result of the invocation.
+	 */
+	public Object wrap0(Object target, Method method, MethodHandle handle) throws Throwable {
+		return wrap(target, method, handle.asSpreader(Object[].class, 0), new Object[0]);
+	}
+
+	/**
+	 * Wraps the invocation of a method with one parameter.
+	 *
+	 * @see #wrap0(Object, Method, MethodHandle)
+	 */
+	public Object wrap1(Object target, Method method, MethodHandle handle, Object arg) throws Throwable {
+		return wrap(target, method, handle.asSpreader(Object[].class, 1), new Object[] { arg });
+	}
+
+	/**
+	 * Wraps the invocation of a method with two parameters.
+	 *
+	 * @see #wrap0(Object, Method, MethodHandle)
+	 */
+	public Object wrap2(Object target, Method method, MethodHandle handle, Object arg0, Object arg1) throws Throwable {
+		return wrap(target, method, handle.asSpreader(Object[].class, 2), new Object[] { arg0, arg1 });
+	}
+
+	/**
+	 * Wraps the invocation of a method with three parameters.
+	 *
+	 * @see #wrap0(Object, Method, MethodHandle)
+	 */
+	public Object wrap3(Object target, Method method, MethodHandle handle, Object arg0, Object arg1, Object arg2) throws Throwable {
+		return wrap(target, method, handle.asSpreader(Object[].class, 3), new Object[] { arg0, arg1, arg2 });
+	}
+
+	/**
+	 * Wraps the invocation of a method with four parameters.
+	 *
+	 * @see #wrap0(Object, Method, MethodHandle)
+	 */
+	public Object wrap4(Object target, Method method, MethodHandle handle, Object arg0, Object arg1, Object arg2, Object arg3) throws Throwable {
+		return wrap(target, method, handle.asSpreader(Object[].class, 4), new Object[] { arg0, arg1, arg2, arg3 });
+	}
+
+}
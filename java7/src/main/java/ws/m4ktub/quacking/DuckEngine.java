@@ -0,0 +1,63 @@
+package ws.m4ktub.quacking;
+
+/**
+ * A <tt>DuckEngine</tt> creates the instances returned by
+ * {@link Mixin#as(Class)}. All engines produce instances that implement the
+ * requested interfaces and {@link DuckType}, and that behave as the mixin
+ * would, but they differ in how calls reach the mixed instances.
+ *
+ * <pre>
+ * Mixin mixin = new Mixin(DuckEngine.GENERATED);
+ * mixin.mix(new NextChecker());
+ * mixin.mix(new NextGenerator());
+ * Iterator iter = mixin.as(Iterator.class);
+ * </pre>
+ *
+ * @author m4ktub
+ * @see Mixin#Mixin(DuckEngine)
+ */
+public interface DuckEngine {
+
+	/**
+	 * The default engine. Creates a {@link java.lang.reflect.Proxy} where
+	 * every call is resolved by the mixin and invoked through reflection.
+	 */
+	DuckEngine PROXY = new ProxyDuckEngine();
+
+	/**
+	 * An engine that generates a class for each combination of interface and
+	 * mixed classes. Methods that can be resolved before any call, because
+	 * they do not depend on configurations or on the types of the actual
+	 * arguments, are implemented with a direct call to the mixed instance.
+	 * All other methods are resolved by the mixin, as with {@link #PROXY}.
+	 * Direct calls pass primitive arguments and results without boxing
+	 * whenever the interface and the implementation use the same primitive
+	 * types, which the proxy cannot do.
+	 *
+	 * <p>
+	 * The generated class is reused by all mixins with the same layout. The
+	 * layout is taken when the instance is created so instances mixed
+	 * afterwards will only be considered for methods resolved by the mixin.
+	 * Exceptions thrown by the mixed instances are propagated as is, even if
+	 * they are checked exceptions not declared by the interface method.
+	 *
+	 * <p>
+	 * Only public interfaces can be implemented by generated classes. For
+	 * other interfaces this engine behaves as {@link #PROXY}.
+	 */
+	DuckEngine GENERATED = new GeneratedDuckEngine();
+
+	/**
+	 * Creates an instance of the given interfaces that is backed by the mixin.
+	 *
+	 * @param mixin
+	 *            The mixin that provides the implementations.
+	 * @param classLoader
+	 *            The class loader where the interfaces are visible.
+	 * @param kinds
+	 *            The interfaces to implement, without repetitions.
+	 * @return An instance that implements the interfaces and {@link DuckType}.
+	 */
+	Object create(Mixin mixin, ClassLoader classLoader, Class<?>... kinds);
+
+}
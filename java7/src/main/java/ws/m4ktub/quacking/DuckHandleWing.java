@@ -0,0 +1,55 @@
+package ws.m4ktub.quacking;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+
+/**
+ * A {@link DuckWing} that receives a method handle to proceed with the
+ * invocation. The handle is bound to the target and has the
+ * <tt>(Object[])Object</tt> type, so the wrapped method can be called without
+ * reflection.
+ *
+ * <pre>
+ * mixin.mix(new SignsCalc()).rename(&quot;add&quot;, &quot;plus&quot;).around(&quot;add&quot;, new DuckHandleWing() {
+ * 	public Object wrap(Object target, Method method, MethodHandle handle, Object[] args) throws Throwable {
+ * 		log(method, args);
+ * 		return handle.invokeExact(args);
+ * 	}
+ * });
+ * </pre>
+ *
+ * @author m4ktub
+ * @see Mixed#around(String, DuckWing...)
+ */
+public abstract class DuckHandleWing implements DuckWing {
+
+	/**
+	 * Wraps the invocation represented by the given object, method, and
+	 * arguments.
+	 *
+	 * @param target
+	 *            The target instance of the invocation.
+	 * @param method
+	 *            The selected method to invoke.
+	 * @param handle
+	 *            A handle that invokes the method on the target with the
+	 *            given arguments array.
+	 * @param args
+	 *            The arguments to the method.
+	 * @return The result of the invocation.
+	 */
+	public abstract Object wrap(Object target, Method method, MethodHandle handle, Object[] args) throws Throwable;
+
+	/**
+	 * Wraps an invocation for which no handle was prepared. The handle is
+	 * created for the given target and method.
+	 *
+	 * @throws IllegalAccessException
+	 *             If the method is not accessible.
+	 */
+	@Override
+	public Object wrap(Object target, Method method, Object[] args) throws Throwable {
+		return wrap(target, method, Invocation.createHandle(target, method), args);
+	}
+
+}
@@ -2,10 +2,11 @@ package ws.m4ktub.quacking;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
+import ws.m4ktub.quacking.helpers.ClassMetadata;
+import ws.m4ktub.quacking.helpers.ClassMetadata.MethodInfo;
 import ws.m4ktub.quacking.helpers.Reflections;
 
 /**
@@ -26,7 +27,8 @@ import ws.m4ktub.quacking.helpers.Reflections;
 public class DuckMatcher {
 
 	private Class<?> kind;
-	private List<Method> missing;
+	private ClassMetadata metadata;
+	private List<MethodInfo> missing;
 
 	/**
 	 * Creates a matcher for the given interface type.
@@ -40,6 +42,7 @@ public class DuckMatcher {
 		}
 
 		this.kind = kind;
+		this.metadata = ClassMetadata.of(kind);
 		reset();
 	}
 
@@ -49,7 +52,7 @@ public class DuckMatcher {
 	 * <code>false</code> after the reset.
 	 */
 	public void reset() {
-		this.missing = new ArrayList<Method>(Arrays.asList(kind.getMethods()));
+		this.missing = new ArrayList<MethodInfo>(metadata.getMethods());
 	}
 
 	/**
@@ -93,10 +96,10 @@ public class DuckMatcher {
 		Mixed mixed = object instanceof Mixed ? (Mixed) object : new Mixed(object);
 		boolean matched = false;
 
-		Iterator<Method> missingIterator = missing.iterator();
+		Iterator<MethodInfo> missingIterator = missing.iterator();
 		while (missingIterator.hasNext()) {
-			Method method = missingIterator.next();
-			Method implMethod = Reflections.getCompatibleMethod(mixed, method, method.getParameterTypes());
+			MethodInfo method = missingIterator.next();
+			Method implMethod = Reflections.getCompatibleMethod(mixed, method.getMethod(), method.getParameterTypes());
 			if (implMethod == null) {
 				continue;
 			}
@@ -123,7 +126,7 @@ public class DuckMatcher {
 	 *         matched objects but not all methods have been matched.
 	 */
 	public boolean isDuckling() {
-		return missing.size() < kind.getMethods().length;
+		return missing.size() < metadata.getMethods().size();
 	}
 
 }
@@ -64,4 +64,28 @@ public interface DuckType {
 	 */
 	<T> T as(Class<T> kind);
 
+	/**
+	 * Converts this instance into a single instance of all the given
+	 * interfaces. Unlike {@link #as(Class)}, the returned instance can be cast
+	 * to any of the interfaces, and to {@linkplain DuckType}, and methods with
+	 * the same signature in several interfaces are resolved only once.
+	 * 
+	 * <pre>
+	 * HttpServletRequest request = mixin.as(HttpServletRequest.class, Closeable.class);
+	 * ((Closeable) request).close();
+	 * </pre>
+	 * 
+	 * @param kind
+	 *            The first interface to convert to.
+	 * @param kinds
+	 *            The other interfaces to convert to. Repeated interfaces are
+	 *            ignored.
+	 * @return A proxy instance of all the specified kinds.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if any of the interfaces is <code>null</code> or not an
+	 *             interface.
+	 */
+	<T> T as(Class<?> kind, Class<?>... kinds);
+
 }
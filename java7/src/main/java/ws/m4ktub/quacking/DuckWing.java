@@ -7,6 +7,8 @@ import java.lang.reflect.Method;
  * 
  * @author m4ktub
  * @see Mixed
+ * @see DuckHandleWing
+ * @see DuckArityWing
  */
 public interface DuckWing {
 
@@ -0,0 +1,316 @@
+package ws.m4ktub.quacking;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An ordered stack of {@link DuckWing wings} around the same invocation. The
+ * first wing is the outermost and each wing proceeds with the next one until
+ * the last wing proceeds with the method itself.
+ *
+ * <p>
+ * The stack is compiled, for each invocation, into a single method handle
+ * where each wing is bound to the handle of the next one. Wings with a fixed
+ * arity contract are bound to handles that receive the arguments
+ * individually so the arguments array is only created where a wing needs it.
+ *
+ * <p>
+ * Only the last wing may be a plain {@link DuckWing}. The other wings must
+ * proceed with the handle they receive so they must be {@link DuckHandleWing}
+ * instances.
+ *
+ * @author m4ktub
+ */
+final class DuckWingStack implements DuckWing {
+
+	private static final MethodType SPREAD_TYPE = MethodType.methodType(Object.class, Object[].class);
+	private static final MethodType UNBOUND_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+	private static final MethodHandle WRAP;
+	private static final MethodHandle WRAP_HANDLE;
+	private static final MethodHandle METHOD_INVOKE;
+	private static final MethodHandle BIND_TO;
+	private static final MethodHandle[] WRAP_ARITY = new MethodHandle[DuckArityWing.MAX_ARITY + 1];
+
+	static {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+		try {
+			WRAP = lookup.findVirtual(DuckWing.class, "wrap", MethodType.methodType(Object.class, Object.class, Method.class, Object[].class));
+			WRAP_HANDLE = lookup.findVirtual(DuckHandleWing.class, "wrap", MethodType.methodType(Object.class, Object.class, Method.class, MethodHandle.class, Object[].class));
+			METHOD_INVOKE = lookup.findVirtual(Method.class, "invoke", MethodType.methodType(Object.class, Object.class, Object[].class)).asFixedArity();
+			BIND_TO = lookup.findVirtual(MethodHandle.class, "bindTo", MethodType.methodType(MethodHandle.class, Object.class));
+
+			for (int arity = 0; arity < WRAP_ARITY.length; arity++) {
+				MethodType type = MethodType.genericMethodType(arity).insertParameterTypes(0, Object.class, Method.class, MethodHandle.class);
+				WRAP_ARITY[arity] = lookup.findVirtual(DuckArityWing.class, "wrap" + arity, type);
+			}
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private static final ClassValue<boolean[]> overrides = new ClassValue<boolean[]>() {
+		@Override
+		protected boolean[] computeValue(Class<?> type) {
+			boolean[] result = new boolean[WRAP_ARITY.length];
+			for (int arity = 0; arity < result.length; arity++) {
+				try {
+					Method method = type.getMethod("wrap" + arity, WRAP_ARITY[arity].type().dropParameterTypes(0, 1).parameterArray());
+					result[arity] = method.getDeclaringClass() != DuckArityWing.class;
+				} catch (NoSuchMethodException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+
+			return result;
+		}
+	};
+
+	private final List<DuckWing> wings;
+
+	private DuckWingStack(List<DuckWing> wings) {
+		this.wings = Collections.unmodifiableList(wings);
+	}
+
+	/**
+	 * Creates a wing that applies the given wings in order.
+	 *
+	 * @param outer
+	 *            The outermost wings.
+	 * @param inner
+	 *            The innermost wing, possibly a stack itself, or
+	 *            <code>null</code>.
+	 * @return The wing or <code>null</code> if there are no wings.
+	 * @throws IllegalArgumentException
+	 *             If a wing other than the last cannot proceed with the next
+	 *             wing.
+	 */
+	static DuckWing of(List<DuckWing> outer, DuckWing inner) {
+		List<DuckWing> all = new ArrayList<DuckWing>(outer);
+		if (inner instanceof DuckWingStack) {
+			all.addAll(((DuckWingStack) inner).wings);
+		} else if (inner != null) {
+			all.add(inner);
+		}
+
+		if (all.isEmpty()) {
+			return null;
+		}
+
+		if (all.size() == 1) {
+			return all.get(0);
+		}
+
+		checkStackable(all.subList(0, all.size() - 1));
+		return new DuckWingStack(all);
+	}
+
+	/**
+	 * Ensures the given wings can wrap other wings.
+	 *
+	 * @throws IllegalArgumentException
+	 *             If one of the wings is not a {@link DuckHandleWing}.
+	 */
+	static void checkStackable(List<DuckWing> wings) {
+		for (DuckWing wing : wings) {
+			if (!(wing instanceof DuckHandleWing)) {
+				String message = String.format("Only a handle wing can wrap other wings. Cannot stack %s.", wing);
+				throw new IllegalArgumentException(message);
+			}
+		}
+	}
+
+	/**
+	 * @return The wings in the stack, from the outermost to the innermost.
+	 */
+	public List<DuckWing> getWings() {
+		return wings;
+	}
+
+	/**
+	 * Builds the call path of a wing, or stack of wings, around an invocation.
+	 *
+	 * @param wing
+	 *            The wing or stack.
+	 * @param target
+	 *            The target instance of the invocation.
+	 * @param method
+	 *            The method to invoke on the target.
+	 * @param handle
+	 *            The handle, with the <tt>(Object[])Object</tt> type, that
+	 *            invokes the method on the target or <code>null</code> if the
+	 *            method is not accessible.
+	 * @param fixedHandle
+	 *            The same handle receiving each argument as an
+	 *            <tt>Object</tt> or <code>null</code> if not available.
+	 * @return A handle with the <tt>(Object[])Object</tt> type that calls all
+	 *         the wings and, eventually, the method.
+	 */
+	static MethodHandle compose(DuckWing wing, Object target, Method method, MethodHandle handle, MethodHandle fixedHandle) {
+		List<DuckWing> layers = wing instanceof DuckWingStack ? ((DuckWingStack) wing).wings : Collections.singletonList(wing);
+		int arity = method.getParameterTypes().length;
+
+		MethodHandle spread = handle;
+		MethodHandle fixed = fixedHandle;
+		if (spread == null) {
+			// proceed with reflection which will report the problem
+			spread = MethodHandles.insertArguments(METHOD_INVOKE, 0, method, target);
+			fixed = null;
+		}
+
+		for (int i = layers.size() - 1; i >= 0; i--) {
+			DuckWing layer = layers.get(i);
+
+			if (isFixedArity(layer, arity)) {
+				if (fixed == null) {
+					fixed = spread.asCollector(Object[].class, arity);
+				}
+
+				fixed = MethodHandles.insertArguments(WRAP_ARITY[arity].bindTo(layer), 0, target, method, fixed);
+				spread = fixed.asSpreader(Object[].class, arity);
+			} else if (layer instanceof DuckHandleWing) {
+				spread = MethodHandles.insertArguments(WRAP_HANDLE.bindTo(layer), 0, target, method, spread);
+				fixed = null;
+			} else {
+				spread = MethodHandles.insertArguments(WRAP.bindTo(layer), 0, target, method);
+				fixed = null;
+			}
+		}
+
+		return spread.asType(SPREAD_TYPE);
+	}
+
+	/**
+	 * Builds the call path of a wing, or stack of wings, around an invocation
+	 * whose target is only known when called. The path is the same as the
+	 * one built by
+	 * {@link #compose(DuckWing, Object, Method, MethodHandle, MethodHandle)}
+	 * but receives the target as first argument. The handles given to each
+	 * {@link DuckHandleWing} and {@link DuckArityWing} are bound to the target
+	 * on each call.
+	 *
+	 * @param wing
+	 *            The wing or stack.
+	 * @param method
+	 *            The method to invoke on the target.
+	 * @param handle
+	 *            The handle, with the <tt>(Object, Object[])Object</tt> type,
+	 *            that invokes the method on the target or <code>null</code>
+	 *            if the method is not accessible.
+	 * @param fixedHandle
+	 *            The same handle receiving the target and each argument as an
+	 *            <tt>Object</tt> or <code>null</code> if not available.
+	 * @return A handle with the <tt>(Object, Object[])Object</tt> type that
+	 *         calls all the wings and, eventually, the method.
+	 */
+	static MethodHandle composeUnbound(DuckWing wing, Method method, MethodHandle handle, MethodHandle fixedHandle) {
+		List<DuckWing> layers = wing instanceof DuckWingStack ? ((DuckWingStack) wing).wings : Collections.singletonList(wing);
+		int arity = method.getParameterTypes().length;
+
+		MethodHandle spread = handle;
+		MethodHandle fixed = fixedHandle;
+		if (spread == null) {
+			// proceed with reflection which will report the problem
+			spread = MethodHandles.insertArguments(METHOD_INVOKE, 0, method);
+			fixed = null;
+		}
+
+		for (int i = layers.size() - 1; i >= 0; i--) {
+			DuckWing layer = layers.get(i);
+
+			if (isFixedArity(layer, arity)) {
+				if (fixed == null) {
+					fixed = spread.asCollector(Object[].class, arity);
+				}
+
+				fixed = bindInner(MethodHandles.insertArguments(WRAP_ARITY[arity].bindTo(layer), 1, method), fixed);
+				spread = fixed.asSpreader(Object[].class, arity);
+			} else if (layer instanceof DuckHandleWing) {
+				spread = bindInner(MethodHandles.insertArguments(WRAP_HANDLE.bindTo(layer), 1, method), spread);
+				fixed = null;
+			} else {
+				spread = MethodHandles.insertArguments(WRAP.bindTo(layer), 1, method);
+				fixed = null;
+			}
+		}
+
+		return spread.asType(UNBOUND_TYPE);
+	}
+
+	/**
+	 * Adapts a wing call, receiving the target, the next handle, and the
+	 * arguments, to receive only the target and the arguments. The next
+	 * handle, receiving the target as first argument, is bound to the target
+	 * on each call.
+	 */
+	private static MethodHandle bindInner(MethodHandle call, MethodHandle inner) {
+		MethodType type = call.type();
+		MethodType swappedType = type.dropParameterTypes(0, 1).insertParameterTypes(1, type.parameterType(0));
+
+		int[] reorder = new int[type.parameterCount()];
+		reorder[0] = 1;
+		for (int i = 2; i < reorder.length; i++) {
+			reorder[i] = i;
+		}
+
+		MethodHandle swapped = MethodHandles.permuteArguments(call, swappedType, reorder);
+		return MethodHandles.foldArguments(swapped, BIND_TO.bindTo(inner));
+	}
+
+	/**
+	 * @return <code>true</code> if some layer of the wing uses the fixed
+	 *         arity contract for methods with the given number of parameters.
+	 */
+	static boolean usesFixedArity(DuckWing wing, int arity) {
+		List<DuckWing> layers = wing instanceof DuckWingStack ? ((DuckWingStack) wing).wings : Collections.singletonList(wing);
+		for (DuckWing layer : layers) {
+			if (isFixedArity(layer, arity)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean isFixedArity(DuckWing wing, int arity) {
+		return wing instanceof DuckArityWing && arity <= DuckArityWing.MAX_ARITY && overrides.get(wing.getClass())[arity];
+	}
+
+	@Override
+	public Object wrap(Object target, Method method, Object[] args) throws Throwable {
+		MethodHandle handle;
+		try {
+			handle = Invocation.createHandle(target, method);
+		} catch (IllegalAccessException e) {
+			handle = null;
+		}
+
+		return (Object) compose(this, target, method, handle, null).invokeExact(args);
+	}
+
+	@Override
+	public String toString() {
+		return "DuckWingStack" + wings;
+	}
+
+	/**
+	 * Stacks of the same wings are equal so that equal configurations can be
+	 * shared.
+	 */
+	@Override
+	public int hashCode() {
+		return wings.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof DuckWingStack && wings.equals(((DuckWingStack) obj).wings);
+	}
+
+}
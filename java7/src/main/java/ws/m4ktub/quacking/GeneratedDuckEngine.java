@@ -0,0 +1,485 @@
+package ws.m4ktub.quacking;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ws.m4ktub.quacking.helpers.ClassAssembler;
+import ws.m4ktub.quacking.helpers.ClassAssembler.Code;
+import ws.m4ktub.quacking.helpers.Reflections;
+
+/**
+ * Creates duck instances from generated classes. Each generated class
+ * implements the interface methods with direct calls to the mixed instances,
+ * when the implementation is known in advance, or with a call to the mixin's
+ * invocation handler, otherwise.
+ *
+ * <p>
+ * A direct call passes the arguments with the types of the implementation.
+ * Conversions between a primitive and its wrapper are emitted once, in the
+ * generated method, so a method with primitive parameters and result, in both
+ * the interface and the implementation, is called without boxing.
+ *
+ * <p>
+ * The generated classes are cached by layout, meaning the interface, the
+ * methods called directly, and the position of the instance they are called
+ * on. The cache is kept in a class that can see all the classes in the layout
+ * so that no class loader is kept alive by a class loader that does not
+ * reference it.
+ *
+ * @author m4ktub
+ */
+class GeneratedDuckEngine implements DuckEngine {
+
+	private static final String PACKAGE = "ws.m4ktub.quacking.generated.";
+	private static final String HANDLER_FIELD = "handler";
+	private static final String METHODS_FIELD = "methods";
+	private static final String DUCKLING_FIELD = "d";
+
+	private static final Method INVOKE;
+
+	static {
+		try {
+			INVOKE = InvocationHandler.class.getMethod("invoke", Object.class, Method.class, Object[].class);
+		} catch (NoSuchMethodException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private static final AtomicInteger counter = new AtomicInteger();
+
+	private static final ClassValue<ConcurrentMap<List<Object>, DuckClass>> layouts = new ClassValue<ConcurrentMap<List<Object>, DuckClass>>() {
+		@Override
+		protected ConcurrentMap<List<Object>, DuckClass> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<List<Object>, DuckClass>();
+		}
+	};
+
+	/**
+	 * A generated class and the interface methods, by position, that its
+	 * instances pass to the invocation handler.
+	 */
+	private static class DuckClass {
+		private final Constructor<?> constructor;
+		private final Method[] methods;
+
+		public DuckClass(Constructor<?> constructor, Method[] methods) {
+			this.constructor = constructor;
+			this.methods = methods;
+		}
+	}
+
+	/**
+	 * A direct call to a method of one of the mixed instances.
+	 */
+	private static class Link {
+		private final int duckling;
+		private final Class<?> owner;
+		private final Method method;
+
+		public Link(int duckling, Class<?> owner, Method method) {
+			this.duckling = duckling;
+			this.owner = owner;
+			this.method = method;
+		}
+
+		public List<Object> key() {
+			return Arrays.<Object> asList(duckling, owner, method);
+		}
+	}
+
+	/**
+	 * A class loader for a single generated class that resolves the classes
+	 * referenced by the generated class to the exact same classes used during
+	 * the generation.
+	 */
+	private static class DuckClassLoader extends ClassLoader {
+		private final Map<String, Class<?>> classes = new HashMap<String, Class<?>>();
+
+		public DuckClassLoader(ClassLoader parent, Set<Class<?>> referencedClasses) {
+			super(parent);
+
+			for (Class<?> referencedClass : referencedClasses) {
+				classes.put(referencedClass.getName(), referencedClass);
+			}
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			Class<?> referencedClass = classes.get(name);
+			if (referencedClass != null) {
+				return referencedClass;
+			}
+
+			return super.loadClass(name, resolve);
+		}
+
+		public Class<?> define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+	@Override
+	public Object create(Mixin mixin, ClassLoader classLoader, Class<?>... kinds) {
+		DispatchTable table = mixin.getDispatchTable(kinds);
+		List<Method> methods = table.getMethods();
+		if (!isImplementable(kinds, methods)) {
+			return PROXY.create(mixin, classLoader, kinds);
+		}
+
+		// link every method that can be called directly
+		List<Mixed> ducklings = new ArrayList<Mixed>(mixin.getImplementations());
+		Link[] links = new Link[methods.size()];
+
+		List<Object> layout = new ArrayList<Object>(methods.size() + 1);
+		layout.add(Arrays.asList(kinds));
+
+		for (int i = 0; i < links.length; i++) {
+			links[i] = link(ducklings, methods.get(i), table.getSlot(i));
+			layout.add(links[i] == null ? null : links[i].key());
+		}
+
+		// reuse or generate the class for the layout
+		Class<?> anchor = getAnchor(kinds, links);
+		DuckClass duckClass = anchor == null ? null : layouts.get(anchor).get(layout);
+
+		if (duckClass == null) {
+			duckClass = generate(classLoader, kinds, methods, links);
+
+			if (anchor != null) {
+				DuckClass existing = layouts.get(anchor).putIfAbsent(layout, duckClass);
+				duckClass = existing != null ? existing : duckClass;
+			}
+		}
+
+		// lazy and weak instances are never linked nor kept
+		Object[] instances = new Object[ducklings.size()];
+		for (int i = 0; i < instances.length; i++) {
+			Mixed duckling = ducklings.get(i);
+			instances[i] = duckling.isStrong() ? duckling.getInstance() : null;
+		}
+
+		try {
+			return duckClass.constructor.newInstance(mixin.getInvocationHandler(kinds), duckClass.methods, instances);
+		} catch (ReflectiveOperationException e) {
+			String message = String.format("Failed to instantiate the generated class for %s.", Arrays.toString(kinds));
+			throw new IllegalStateException(message, e);
+		}
+	}
+
+	/**
+	 * Checks if a generated class can implement the interfaces and the given
+	 * methods. The interfaces and all return types must be accessible, to be
+	 * cast, and methods with the same signature must have the same return
+	 * type, because covariant returns would require bridge methods.
+	 */
+	private boolean isImplementable(Class<?>[] kinds, List<Method> methods) {
+		for (Class<?> kind : kinds) {
+			if (!Modifier.isPublic(kind.getModifiers())) {
+				return false;
+			}
+
+			for (Method kindMethod : kind.getMethods()) {
+				if (Modifier.isStatic(kindMethod.getModifiers())) {
+					continue;
+				}
+
+				for (Method method : methods) {
+					boolean sameSignature = method.getName().equals(kindMethod.getName()) && Arrays.equals(method.getParameterTypes(), kindMethod.getParameterTypes());
+					if (sameSignature && !method.getReturnType().equals(kindMethod.getReturnType())) {
+						return false;
+					}
+				}
+			}
+		}
+
+		for (Method method : methods) {
+			if (!isAccessible(method.getReturnType())) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Determines if a method, always resolved to the same method of the same
+	 * mixed instance, can be called directly from a generated class.
+	 *
+	 * @return The direct call or <code>null</code> if the method must be
+	 *         resolved by the mixin.
+	 */
+	private Link link(List<Mixed> ducklings, Method intfMethod, DispatchTable.Slot slot) {
+		Class<?> intf = intfMethod.getDeclaringClass();
+		if (intf == Object.class || intf == DuckType.class) {
+			return null;
+		}
+
+		Invocation invocation = slot.getInvocation();
+		if (invocation == null || invocation.getAround() != null || invocation.getArgs() != null) {
+			return null;
+		}
+
+		if (!slot.getMixed().isStrong()) {
+			return null;
+		}
+
+		Method implMethod = invocation.getMethod();
+		Class<?> instanceClass = invocation.getTarget().getClass();
+		int duckling = indexOf(ducklings, slot.getMixed());
+
+		Class<?>[] intfTypes = intfMethod.getParameterTypes();
+		Class<?>[] implTypes = implMethod.getParameterTypes();
+		for (int i = 0; i < intfTypes.length; i++) {
+			if (!isConvertible(intfTypes[i], implTypes[i])) {
+				return null;
+			}
+		}
+
+		Class<?> owner = implMethod.getDeclaringClass();
+		if (!owner.isInterface() && isAccessible(instanceClass)) {
+			owner = instanceClass;
+		}
+
+		return isAccessible(owner) ? new Link(duckling, owner, implMethod) : null;
+	}
+
+	private static int indexOf(List<Mixed> ducklings, Mixed mixed) {
+		for (int i = 0; i < ducklings.size(); i++) {
+			if (ducklings.get(i) == mixed) {
+				return i;
+			}
+		}
+
+		throw new IllegalStateException("The mixed instance is not part of the mixin.");
+	}
+
+	/**
+	 * Checks if a value can be passed, in bytecode, from one type to another
+	 * with at most a cast and a conversion between a primitive and its
+	 * wrapper.
+	 */
+	private static boolean isConvertible(Class<?> from, Class<?> to) {
+		if (from == to) {
+			return true;
+		}
+
+		if (from.isPrimitive() && to.isPrimitive()) {
+			return false;
+		}
+
+		if (from.isPrimitive()) {
+			return to.isAssignableFrom(Reflections.getWrapperType(from));
+		}
+
+		if (to.isPrimitive()) {
+			return from.isAssignableFrom(Reflections.getWrapperType(to));
+		}
+
+		return isAccessible(to);
+	}
+
+	private static boolean isAccessible(Class<?> type) {
+		while (type.isArray()) {
+			type = type.getComponentType();
+		}
+
+		return type.isPrimitive() || Modifier.isPublic(type.getModifiers());
+	}
+
+	/**
+	 * Finds a class, among those in the layout, that can see all other
+	 * classes in the layout. That class can keep the generated class without
+	 * extending the lifetime of any class loader.
+	 */
+	private Class<?> getAnchor(Class<?>[] kinds, Link[] links) {
+		List<Class<?>> classes = new ArrayList<Class<?>>();
+		classes.add(DuckType.class);
+		classes.addAll(Arrays.asList(kinds));
+
+		for (Link link : links) {
+			if (link != null) {
+				classes.add(link.owner);
+				classes.add(link.method.getReturnType());
+				classes.addAll(Arrays.asList(link.method.getParameterTypes()));
+			}
+		}
+
+		for (Class<?> candidate : classes) {
+			ClassLoader classLoader = candidate.getClassLoader();
+
+			boolean seesAll = true;
+			for (Class<?> other : classes) {
+				seesAll &= Reflections.isVisible(classLoader, other);
+			}
+
+			if (seesAll) {
+				return candidate;
+			}
+		}
+
+		return null;
+	}
+
+	private DuckClass generate(ClassLoader classLoader, Class<?>[] kinds, List<Method> methods, Link[] links) {
+		Class<?>[] interfaces = new Class<?>[kinds.length + 1];
+		interfaces[0] = DuckType.class;
+		System.arraycopy(kinds, 0, interfaces, 1, kinds.length);
+
+		String name = PACKAGE + kinds[0].getSimpleName() + "$Duck" + counter.incrementAndGet();
+		ClassAssembler assembler = new ClassAssembler(name, Object.class, interfaces);
+		assembler.field(ClassAssembler.ACC_PRIVATE | ClassAssembler.ACC_FINAL, HANDLER_FIELD, InvocationHandler.class);
+		assembler.field(ClassAssembler.ACC_PRIVATE | ClassAssembler.ACC_FINAL, METHODS_FIELD, Method[].class);
+
+		// constructor keeps the handler, the shared interface methods, and the
+		// instances called directly
+		boolean[] called = new boolean[0];
+		for (Link link : links) {
+			if (link != null) {
+				called = Arrays.copyOf(called, Math.max(called.length, link.duckling + 1));
+				called[link.duckling] = true;
+			}
+		}
+
+		Code init = assembler.method(ClassAssembler.ACC_PUBLIC, "<init>", Void.TYPE, InvocationHandler.class, Method[].class, Object[].class);
+		try {
+			init.loadThis().invokeConstructor(Object.class.getConstructor());
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+
+		init.loadThis().load(InvocationHandler.class, 1).putField(HANDLER_FIELD, InvocationHandler.class);
+		init.loadThis().load(Method[].class, 2).putField(METHODS_FIELD, Method[].class);
+		for (int i = 0; i < called.length; i++) {
+			if (called[i]) {
+				assembler.field(ClassAssembler.ACC_PRIVATE | ClassAssembler.ACC_FINAL, DUCKLING_FIELD + i, Object.class);
+				init.loadThis().load(Object[].class, 3).push(i).arrayLoad().putField(DUCKLING_FIELD + i, Object.class);
+			}
+		}
+
+		init.returnValue(Void.TYPE);
+
+		// implement each method
+		for (int i = 0; i < links.length; i++) {
+			Method method = methods.get(i);
+			Code code = assembler.method(ClassAssembler.ACC_PUBLIC | ClassAssembler.ACC_FINAL, method.getName(), method.getReturnType(), method.getParameterTypes());
+
+			if (links[i] != null) {
+				generateDirectCall(code, method, links[i]);
+			} else {
+				generateHandlerCall(code, method, i);
+			}
+		}
+
+		// define class
+		DuckClassLoader loader = new DuckClassLoader(classLoader, assembler.getReferencedClasses());
+		Class<?> generated = loader.define(name, assembler.toByteArray());
+
+		try {
+			Constructor<?> constructor = generated.getConstructor(InvocationHandler.class, Method[].class, Object[].class);
+			return new DuckClass(constructor, methods.toArray(new Method[methods.size()]));
+		} catch (ReflectiveOperationException e) {
+			String message = String.format("Failed to initialize the generated class for %s.", Arrays.toString(kinds));
+			throw new IllegalStateException(message, e);
+		}
+	}
+
+	private void generateDirectCall(Code code, Method intfMethod, Link link) {
+		code.loadThis().getField(DUCKLING_FIELD + link.duckling, Object.class).checkCast(link.owner);
+
+		Class<?>[] intfTypes = intfMethod.getParameterTypes();
+		Class<?>[] implTypes = link.method.getParameterTypes();
+
+		int slot = 1;
+		for (int i = 0; i < intfTypes.length; i++) {
+			code.load(intfTypes[i], slot);
+			convert(code, intfTypes[i], implTypes[i]);
+			slot += ClassAssembler.size(intfTypes[i]);
+		}
+
+		code.invoke(link.owner, link.method);
+
+		Class<?> intfType = intfMethod.getReturnType();
+		Class<?> implType = link.method.getReturnType();
+
+		if (intfType == Void.TYPE) {
+			code.pop(implType);
+		} else if (intfType == Void.class) {
+			code.pop(implType).pushNull();
+		} else {
+			convert(code, implType, intfType);
+		}
+
+		code.returnValue(intfType);
+	}
+
+	/**
+	 * Converts the value on top of the stack between types accepted by
+	 * {@link #isConvertible(Class, Class)}.
+	 */
+	private void convert(Code code, Class<?> from, Class<?> to) {
+		if (from == to) {
+			return;
+		}
+
+		if (to.isPrimitive()) {
+			code.unbox(to);
+		} else if (from.isPrimitive()) {
+			code.box(from);
+			if (!to.isAssignableFrom(Reflections.getWrapperType(from))) {
+				code.checkCast(to);
+			}
+		} else if (!to.isAssignableFrom(from)) {
+			code.checkCast(to);
+		}
+	}
+
+	private void generateHandlerCall(Code code, Method intfMethod, int index) {
+		code.loadThis().getField(HANDLER_FIELD, InvocationHandler.class);
+		code.loadThis();
+		code.loadThis().getField(METHODS_FIELD, Method[].class).push(index).arrayLoad();
+
+		Class<?>[] parameterTypes = intfMethod.getParameterTypes();
+		if (parameterTypes.length == 0) {
+			code.pushNull();
+		} else {
+			code.push(parameterTypes.length).newArray(Object.class);
+
+			int slot = 1;
+			for (int i = 0; i < parameterTypes.length; i++) {
+				Class<?> type = parameterTypes[i];
+				code.dup().push(i).load(type, slot);
+				if (type.isPrimitive()) {
+					code.box(type);
+				}
+
+				code.arrayStore();
+				slot += ClassAssembler.size(type);
+			}
+		}
+
+		code.invoke(InvocationHandler.class, INVOKE);
+
+		Class<?> returnType = intfMethod.getReturnType();
+		if (returnType == Void.TYPE) {
+			code.pop(Object.class);
+		} else if (returnType.isPrimitive()) {
+			code.unbox(returnType);
+		} else if (returnType != Object.class) {
+			code.checkCast(returnType);
+		}
+
+		code.returnValue(returnType);
+	}
+
+}
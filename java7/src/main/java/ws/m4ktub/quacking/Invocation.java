@@ -1,24 +1,48 @@
 package ws.m4ktub.quacking;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
-import java.util.Arrays;
+import java.lang.reflect.Modifier;
 
 /**
  * Simple representation of an method invocation that can be wrapped in a
  * {@link DuckWing}.
  * 
+ * <p>
+ * When the method is accessible the invocation holds a {@link MethodHandle}
+ * bound to the target and adapted to receive the arguments as an array. The
+ * handle is used to proceed with the invocation, and is given to any
+ * {@link DuckHandleWing}, so that reflection is not used on each call. A
+ * {@link DuckArityWing} is given a handle that receives the arguments
+ * individually, so that no arguments array is needed to proceed.
+ * 
+ * <p>
+ * The wings are composed with the method handle, once for each invocation,
+ * into a single call path. Curried constants are inserted into the handle so
+ * that a curried invocation receives the arguments of the interface method
+ * as they are.
+ * 
  * @author m4ktub
  */
 public class Invocation {
 
 	public static final Object CURRY_MISS = new Object();
 
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final MethodType SPREAD_TYPE = MethodType.methodType(Object.class, Object[].class);
+	private static final MethodType UNBOUND_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
 	private final DuckWing DEFAULT = new DuckWing.Default();
 
-	private Object target;
-	private DuckWing around;
-	private Method method;
-	private Object[] curryArgs;
+	private final Object target;
+	private final DuckWing around;
+	private final Method method;
+	private final MethodBinding binding;
+	private final CurryPlan curryPlan;
+	private final MethodHandle handle;
+	private final MethodHandle path;
 
 	/**
 	 * Creates an immutable invocation with all properties.
@@ -40,7 +64,173 @@ public class Invocation {
 		this.target = target;
 		this.around = around;
 		this.method = method;
-		this.curryArgs = curryArgs;
+		this.binding = null;
+		this.curryPlan = CurryPlan.of(null, curryArgs);
+		this.handle = getHandleOrNull(target, method);
+
+		MethodHandle fixedHandle = null;
+		if (handle != null && needsFixedHandle(around, curryPlan, method)) {
+			fixedHandle = getHandleOrNull(target, method, true);
+		}
+
+		this.path = getPath(around, curryPlan, target, method, handle, fixedHandle);
+	}
+
+	/**
+	 * Creates an immutable invocation from a shared binding, only binding the
+	 * target to the already resolved method handle.
+	 * 
+	 * @param target
+	 *            The target instance of the invocation.
+	 * @param around
+	 *            The around logic to apply or <code>null</code> if the method
+	 *            should be invoked directly.
+	 * @param binding
+	 *            The resolved method to invoke on the target.
+	 * @param curryPlan
+	 *            The compiled curry configuration or <code>null</code> if no
+	 *            curry is used and only the original arguments will be passed.
+	 */
+	public Invocation(Object target, DuckWing around, MethodBinding binding, CurryPlan curryPlan) {
+		super();
+		this.target = target;
+		this.around = around;
+		this.method = binding.getMethod();
+		this.binding = binding;
+		this.curryPlan = curryPlan;
+		this.handle = binding.getHandle() == null ? null : binding.getHandle().bindTo(target);
+
+		MethodHandle fixedHandle = null;
+		if (handle != null && needsFixedHandle(around, curryPlan, method)) {
+			fixedHandle = binding.getFixedHandle().bindTo(target);
+		}
+
+		this.path = getPath(around, curryPlan, target, method, handle, fixedHandle);
+	}
+
+	/**
+	 * Creates an invocation without a target for subclasses that only bind
+	 * the target when needed.
+	 * 
+	 * @param around
+	 *            The around logic to apply or <code>null</code>.
+	 * @param binding
+	 *            The resolved method to invoke.
+	 * @param curryPlan
+	 *            The compiled curry configuration or <code>null</code>.
+	 */
+	Invocation(DuckWing around, MethodBinding binding, CurryPlan curryPlan) {
+		super();
+		this.target = null;
+		this.around = around;
+		this.method = binding.getMethod();
+		this.binding = binding;
+		this.curryPlan = curryPlan;
+		this.handle = null;
+		this.path = null;
+	}
+
+	static boolean needsFixedHandle(DuckWing around, CurryPlan curryPlan, Method method) {
+		int arity = method.getParameterTypes().length;
+		if (around != null) {
+			return DuckWingStack.usesFixedArity(around, arity);
+		}
+
+		return curryPlan != null && arity >= curryPlan.getTemplate().length;
+	}
+
+	/**
+	 * Builds the handle that receives the arguments, as given to
+	 * {@link #proceeed(Object[])}, and calls the wings or the method. Wings
+	 * receive the curried arguments so they are applied before the call.
+	 */
+	private static MethodHandle getPath(DuckWing around, CurryPlan curryPlan, Object target, Method method, MethodHandle handle, MethodHandle fixedHandle) {
+		if (around != null) {
+			return DuckWingStack.compose(around, target, method, handle, fixedHandle);
+		}
+
+		if (curryPlan != null && fixedHandle != null) {
+			return curryPlan.bind(fixedHandle);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Creates a method handle that invokes the method on the target. The
+	 * handle receives the arguments as an <tt>Object[]</tt> and returns the
+	 * result as an <tt>Object</tt>, with primitive values boxed and
+	 * <code>null</code> for <code>void</code> methods.
+	 * 
+	 * @param target
+	 *            The target instance of the invocation. Ignored for static
+	 *            methods.
+	 * @param method
+	 *            The method to invoke on the target.
+	 * @return The adapted method handle.
+	 * @throws IllegalAccessException
+	 *             If the method is not accessible.
+	 */
+	static MethodHandle createHandle(Object target, Method method) throws IllegalAccessException {
+		return createUnboundHandle(method).bindTo(target);
+	}
+
+	/**
+	 * Creates a method handle that invokes the method on the target given as
+	 * first argument. The handle has the type <tt>(Object, Object[])Object</tt>
+	 * and can be bound to any instance of the method's class.
+	 * 
+	 * @param method
+	 *            The method to invoke.
+	 * @return The adapted method handle.
+	 * @throws IllegalAccessException
+	 *             If the method is not accessible.
+	 */
+	static MethodHandle createUnboundHandle(Method method) throws IllegalAccessException {
+		MethodHandle handle = LOOKUP.unreflect(method).asFixedArity();
+		handle = handle.asSpreader(Object[].class, method.getParameterTypes().length);
+
+		if (Modifier.isStatic(method.getModifiers())) {
+			// ignore the target
+			handle = MethodHandles.dropArguments(handle, 0, Object.class);
+		}
+
+		return handle.asType(UNBOUND_TYPE);
+	}
+
+	/**
+	 * Creates a method handle that invokes the method on the target given as
+	 * first argument and receives each argument as an <tt>Object</tt>. The
+	 * handle has the generic type with one more parameter than the method.
+	 * 
+	 * @param method
+	 *            The method to invoke.
+	 * @return The adapted method handle.
+	 * @throws IllegalAccessException
+	 *             If the method is not accessible.
+	 */
+	static MethodHandle createUnboundFixedHandle(Method method) throws IllegalAccessException {
+		MethodHandle handle = LOOKUP.unreflect(method).asFixedArity();
+
+		if (Modifier.isStatic(method.getModifiers())) {
+			// ignore the target
+			handle = MethodHandles.dropArguments(handle, 0, Object.class);
+		}
+
+		return handle.asType(MethodType.genericMethodType(method.getParameterTypes().length + 1));
+	}
+
+	private static MethodHandle getHandleOrNull(Object target, Method method) {
+		return getHandleOrNull(target, method, false);
+	}
+
+	private static MethodHandle getHandleOrNull(Object target, Method method, boolean fixed) {
+		try {
+			return fixed ? createUnboundFixedHandle(method).bindTo(target) : createHandle(target, method);
+		} catch (IllegalAccessException e) {
+			// proceed with reflection which will report the problem
+			return null;
+		}
 	}
 
 	public Object getTarget() {
@@ -56,11 +246,28 @@ public class Invocation {
 	}
 
 	public Object[] getArgs() {
-		return curryArgs;
+		return curryPlan == null ? null : curryPlan.getTemplate();
+	}
+
+	/**
+	 * @return The shared binding this invocation was created from or
+	 *         <code>null</code> if created from a method.
+	 */
+	MethodBinding getBinding() {
+		return binding;
+	}
+
+	CurryPlan getCurryPlan() {
+		return curryPlan;
 	}
 
-	private DuckWing around() {
-		return around == null ? DEFAULT : around;
+	/**
+	 * @return The handle that invokes the method on the target, with the
+	 *         <tt>(Object[])Object</tt> type, or <code>null</code> if the
+	 *         method is not accessible.
+	 */
+	public MethodHandle getHandle() {
+		return handle;
 	}
 
 	/**
@@ -71,39 +278,26 @@ public class Invocation {
 	 *             When the invocation results in an error.
 	 */
 	public Object proceeed(Object[] args) throws Throwable {
-		return around().wrap(getTarget(), getMethod(), getFinalArgs(args));
+		if (path != null && around == null) {
+			// constants are already in the path
+			return (Object) path.invokeExact(args);
+		}
+
+		Object[] finalArgs = getFinalArgs(args);
+
+		if (path != null) {
+			return (Object) path.invokeExact(finalArgs);
+		}
+
+		if (handle == null) {
+			return DEFAULT.wrap(target, method, finalArgs);
+		}
+
+		return (Object) handle.invokeExact(finalArgs);
 	}
 
 	protected Object[] getFinalArgs(Object[] intfArgs) {
-		if (this.curryArgs == null) {
-			return intfArgs;
-		} else {
-			int misses = 0;
-			for (int i = 0; i < curryArgs.length; i++) {
-				if (curryArgs[i] == CURRY_MISS) {
-					misses++;
-				}
-			}
-			
-			if (intfArgs == null) {
-				intfArgs = new Object[0];
-			}
-			
-			Object[] finalArgs = new Object[this.curryArgs.length + intfArgs.length - misses];
-			System.arraycopy(this.curryArgs, 0, finalArgs, 0, this.curryArgs.length);
-			if (misses == 0) {
-				System.arraycopy(intfArgs, 0, finalArgs, curryArgs.length, intfArgs.length);
-			} else {
-				Arrays.fill(finalArgs, this.curryArgs.length, finalArgs.length, CURRY_MISS);
-				for (int i = 0, j = 0; i < finalArgs.length; i++) {
-					if (finalArgs[i] == CURRY_MISS) {
-						finalArgs[i] = intfArgs[j++];
-					}
-				}
-			}
-
-			return finalArgs;
-		}
+		return curryPlan == null ? intfArgs : curryPlan.apply(intfArgs);
 	}
 
 }
@@ -0,0 +1,302 @@
+package ws.m4ktub.quacking;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded cache of resolved invocations, keyed by the interface method and
+ * the types of the arguments passed to it. The cache can be used concurrently
+ * without locks and lookups do not allocate any objects.
+ *
+ * <p>
+ * The cache is divided in small sets of entries and each key can only be
+ * stored in one set. When a set is full, the entry that was used less often is
+ * evicted. Usage counts are halved on each eviction so that entries that were
+ * popular in the past eventually give place to new popular entries. This keeps
+ * the few argument types that are used most of the time in the cache even
+ * when many other argument types are used occasionally.
+ *
+ * <p>
+ * The hit, miss and eviction counters are meant to help choosing the
+ * capacity of the cache. Hits are counted by each entry, like the usage
+ * counts, so that lookups do not contend on a shared counter. Once an entry
+ * is used often enough to stay in the cache its usage count is no longer
+ * updated and only a sample of its hits is counted, so that popular entries
+ * are only read by the threads that use them. The number of hits is exact
+ * when the cache is used by a single thread and no entry reaches that point,
+ * and approximate otherwise.
+ *
+ * @author m4ktub
+ */
+public final class InvocationCache {
+
+	/**
+	 * The capacity of caches created without an explicit capacity.
+	 */
+	public static final int DEFAULT_CAPACITY = 64;
+
+	private static final int WAYS = 4;
+
+	// usage count from which entries are only read on most hits
+	private static final int MAX_USES = 1 << 10;
+
+	// one in this many hits of a popular entry is counted
+	private static final int HIT_SAMPLING = 64;
+
+	private static final class Entry {
+		private final int hash;
+		private final Method method;
+		private final Type[] argTypes;
+		private final Invocation invocation;
+
+		// approximate counts, races only make them less accurate
+		private int uses;
+		private volatile long hits;
+
+		public Entry(int hash, Method method, Type[] argTypes, Invocation invocation) {
+			this.hash = hash;
+			this.method = method;
+			this.argTypes = argTypes;
+			this.invocation = invocation;
+		}
+
+		public boolean matches(int hash, Method method, Type[] argTypes) {
+			if (this.hash != hash || !this.method.equals(method)) {
+				return false;
+			}
+
+			if (this.argTypes.length != argTypes.length) {
+				return false;
+			}
+
+			for (int i = 0; i < argTypes.length; i++) {
+				Type type = this.argTypes[i];
+				if (type != argTypes[i] && (type == null || !type.equals(argTypes[i]))) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+	}
+
+	private final AtomicReferenceArray<Entry> entries;
+	private final int ways;
+	private final int setMask;
+
+	// hits of the entries no longer in the cache
+	private final AtomicLong retiredHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Creates a cache with the {@linkplain #DEFAULT_CAPACITY default
+	 * capacity}.
+	 */
+	public InvocationCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a cache that holds at most the given number of invocations. The
+	 * capacity is rounded up to a power of two.
+	 *
+	 * @param capacity
+	 *            The maximum number of invocations in the cache.
+	 */
+	public InvocationCache(int capacity) {
+		if (capacity < 1 || capacity > 1 << 30) {
+			String message = String.format("The capacity must be a positive number. Cannot use %d.", capacity);
+			throw new IllegalArgumentException(message);
+		}
+
+		int length = Integer.highestOneBit(capacity);
+		if (length < capacity) {
+			length <<= 1;
+		}
+
+		this.entries = new AtomicReferenceArray<Entry>(length);
+		this.ways = Math.min(WAYS, length);
+		this.setMask = length / ways - 1;
+	}
+
+	private static int hash(Method method, Type[] argTypes) {
+		int hash = method.hashCode();
+		for (int i = 0; i < argTypes.length; i++) {
+			hash = 31 * hash + (argTypes[i] == null ? 0 : argTypes[i].hashCode());
+		}
+
+		return hash ^ (hash >>> 16);
+	}
+
+	private int setStart(int hash) {
+		return (hash & setMask) * ways;
+	}
+
+	/**
+	 * Obtains a cached invocation.
+	 *
+	 * @param method
+	 *            The interface method.
+	 * @param argTypes
+	 *            The types of the arguments passed to the method.
+	 * @return The cached invocation or <code>null</code> if there is none for
+	 *         the method and argument types combination.
+	 */
+	public Invocation get(Method method, Type[] argTypes) {
+		int hash = hash(method, argTypes);
+		int start = setStart(hash);
+
+		for (int i = start; i < start + ways; i++) {
+			Entry entry = entries.get(i);
+			if (entry != null && entry.matches(hash, method, argTypes)) {
+				if (entry.uses < MAX_USES) {
+					entry.uses++;
+					entry.hits++;
+				} else if (ThreadLocalRandom.current().nextInt(HIT_SAMPLING) == 0) {
+					entry.hits += HIT_SAMPLING;
+				}
+
+				return entry.invocation;
+			}
+		}
+
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Caches an invocation, possibly evicting the least used invocation that
+	 * competes for the same place in the cache.
+	 *
+	 * @param method
+	 *            The interface method.
+	 * @param argTypes
+	 *            The types of the arguments passed to the method.
+	 * @param invocation
+	 *            The invocation resolved for the method and argument types.
+	 */
+	public void put(Method method, Type[] argTypes, Invocation invocation) {
+		if (invocation == null) {
+			throw new IllegalArgumentException("Cannot cache a null invocation.");
+		}
+
+		int hash = hash(method, argTypes);
+		int start = setStart(hash);
+		Entry created = new Entry(hash, method, argTypes.clone(), invocation);
+
+		while (true) {
+			int victim = start;
+			Entry victimEntry = null;
+
+			for (int i = start; i < start + ways; i++) {
+				Entry entry = entries.get(i);
+				if (entry == null) {
+					if (entries.compareAndSet(i, null, created)) {
+						return;
+					}
+
+					entry = entries.get(i);
+				}
+
+				if (entry != null && entry.matches(hash, method, argTypes)) {
+					// replace with the latest resolution
+					created.uses = entry.uses;
+					created.hits = entry.hits;
+					if (entries.compareAndSet(i, entry, created)) {
+						return;
+					}
+
+					entry = entries.get(i);
+				}
+
+				if (entry != null && (victimEntry == null || entry.uses < victimEntry.uses)) {
+					victim = i;
+					victimEntry = entry;
+				}
+			}
+
+			if (victimEntry != null && entries.compareAndSet(victim, victimEntry, created)) {
+				evictions.incrementAndGet();
+				retiredHits.addAndGet(victimEntry.hits);
+				age(start);
+				return;
+			}
+		}
+	}
+
+	private void age(int start) {
+		for (int i = start; i < start + ways; i++) {
+			Entry entry = entries.get(i);
+			if (entry != null) {
+				entry.uses >>>= 1;
+			}
+		}
+	}
+
+	/**
+	 * Removes all cached invocations. The counters are not reset.
+	 */
+	public void clear() {
+		for (int i = 0; i < entries.length(); i++) {
+			Entry entry = entries.getAndSet(i, null);
+			if (entry != null) {
+				retiredHits.addAndGet(entry.hits);
+			}
+		}
+	}
+
+	/**
+	 * @return The maximum number of invocations in the cache.
+	 */
+	public int getCapacity() {
+		return entries.length();
+	}
+
+	/**
+	 * @return The number of invocations currently in the cache.
+	 */
+	public int size() {
+		int size = 0;
+		for (int i = 0; i < entries.length(); i++) {
+			if (entries.get(i) != null) {
+				size++;
+			}
+		}
+
+		return size;
+	}
+
+	/**
+	 * @return The number of lookups that found an invocation.
+	 */
+	public long getHits() {
+		long hits = retiredHits.get();
+		for (int i = 0; i < entries.length(); i++) {
+			Entry entry = entries.get(i);
+			if (entry != null) {
+				hits += entry.hits;
+			}
+		}
+
+		return hits;
+	}
+
+	/**
+	 * @return The number of lookups that did not find an invocation.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return The number of invocations removed to give place to others.
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+}
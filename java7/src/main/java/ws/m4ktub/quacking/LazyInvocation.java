@@ -0,0 +1,50 @@
+package ws.m4ktub.quacking;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * An invocation of a method on an instance that is mixed lazily. The instance
+ * is created, and the method bound to it, when the invocation first proceeds
+ * so that resolving the method does not create the instance.
+ * 
+ * @author m4ktub
+ * @see Mixin#mixLazy(Class, Mixer)
+ */
+class LazyInvocation extends Invocation {
+
+	private final Mixed mixed;
+
+	// bound on first use and races only bind twice
+	private volatile Invocation delegate;
+
+	public LazyInvocation(Mixed mixed, DuckWing around, MethodBinding binding, CurryPlan curryPlan) {
+		super(around, binding, curryPlan);
+		this.mixed = mixed;
+	}
+
+	private Invocation getDelegate() {
+		Invocation current = delegate;
+		if (current == null) {
+			current = getBinding().bind(mixed.getInstance(), getAround(), getCurryPlan());
+			delegate = current;
+		}
+
+		return current;
+	}
+
+	@Override
+	public Object getTarget() {
+		return getDelegate().getTarget();
+	}
+
+	@Override
+	public MethodHandle getHandle() {
+		return getDelegate().getHandle();
+	}
+
+	@Override
+	public Object proceeed(Object[] args) throws Throwable {
+		return getDelegate().proceeed(args);
+	}
+
+}
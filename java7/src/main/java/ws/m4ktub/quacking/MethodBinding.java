@@ -0,0 +1,115 @@
+package ws.m4ktub.quacking;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+
+/**
+ * A resolved method that is not yet bound to a target instance. Bindings are
+ * shared by all instances of the same class so that the method handle is only
+ * created once. Each {@link Invocation} then binds its own target.
+ *
+ * @author m4ktub
+ */
+public final class MethodBinding {
+
+	/**
+	 * The binding that represents the absence of a compatible method. It is
+	 * used to cache failed resolutions and cannot be bound.
+	 */
+	public static final MethodBinding NONE = new MethodBinding(null, null);
+
+	private final Method method;
+	private final MethodHandle handle;
+	private volatile MethodHandle fixedHandle;
+
+	private MethodBinding(Method method, MethodHandle handle) {
+		this.method = method;
+		this.handle = handle;
+	}
+
+	/**
+	 * Creates the binding for a method.
+	 *
+	 * @param method
+	 *            The resolved method.
+	 * @return The binding with a method handle for the method, if the method
+	 *         is accessible.
+	 */
+	public static MethodBinding of(Method method) {
+		try {
+			return new MethodBinding(method, Invocation.createUnboundHandle(method));
+		} catch (IllegalAccessException e) {
+			// invocations will use reflection which will report the problem
+			return new MethodBinding(method, null);
+		}
+	}
+
+	/**
+	 * @return <code>false</code> if this is the {@link #NONE} binding.
+	 */
+	public boolean isResolved() {
+		return method != null;
+	}
+
+	/**
+	 * @return The resolved method.
+	 */
+	public Method getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return The handle that invokes the method, with the
+	 *         <tt>(Object, Object[])Object</tt> type, or <code>null</code> if
+	 *         the method is not accessible.
+	 */
+	MethodHandle getHandle() {
+		return handle;
+	}
+
+	/**
+	 * @return The handle that invokes the method, receiving the target and
+	 *         each argument as an <tt>Object</tt>, or <code>null</code> if
+	 *         the method is not accessible.
+	 */
+	MethodHandle getFixedHandle() {
+		if (handle == null) {
+			return null;
+		}
+
+		// only needed by some wings so created on first use
+		MethodHandle result = fixedHandle;
+		if (result == null) {
+			try {
+				result = Invocation.createUnboundFixedHandle(method);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+
+			fixedHandle = result;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Creates an invocation of the method on the given target.
+	 *
+	 * @param target
+	 *            The target instance of the invocation.
+	 * @param around
+	 *            The around logic to apply or <code>null</code>.
+	 * @param curryPlan
+	 *            The compiled curry configuration or <code>null</code>.
+	 * @return The invocation.
+	 * @see Invocation#Invocation(Object, DuckWing, MethodBinding, CurryPlan)
+	 */
+	public Invocation bind(Object target, DuckWing around, CurryPlan curryPlan) {
+		if (!isResolved()) {
+			throw new IllegalStateException("Cannot bind a failed resolution.");
+		}
+
+		return new Invocation(target, around, this, curryPlan);
+	}
+
+}
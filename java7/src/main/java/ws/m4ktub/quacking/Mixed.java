@@ -1,71 +1,111 @@
 package ws.m4ktub.quacking;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ws.m4ktub.quacking.helpers.ClassMetadata;
+import ws.m4ktub.quacking.helpers.Interner;
 
 /**
  * An abstraction for a mixed instance. This allows the configuration of how the
  * instance is used in the mixin.
  * 
+ * <p>
+ * Method configurations are immutable and interned, so that mixed instances
+ * with the same configuration share the same configuration objects, and the
+ * compiled form of each configuration, no matter how many mixins are created.
+ * 
  * @author m4ktub
  */
 public class Mixed {
 
-	private static class MethodArgTypes {
-		public Method method;
-		public Type[] argTypes;
-
-		public MethodArgTypes(Method method, Type[] argTypes) {
-			this.method = method;
-			this.argTypes = argTypes;
-		}
-
-		@Override
-		public int hashCode() {
-			return Arrays.hashCode(argTypes) + method.hashCode();
-		}
-
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj) {
-				return true;
-			}
-
-			MethodArgTypes other = (MethodArgTypes) obj;
-			if (!Arrays.equals(argTypes, other.argTypes)) {
-				return false;
-			}
+	private static final Interner<List<Class<?>>> sharedPreferences = new Interner<List<Class<?>>>();
 
-			if (!method.equals(other.method)) {
-				return false;
-			}
-
-			return true;
-		}
-
-	}
-
-	private Object instance;
+	private final Object instance;
+	private final LazyInstance lazy;
+	private final WeakReference<Object> weak;
+	private final ClassMetadata metadata;
+	private final boolean frozen;
+	private Mixin mixin;
 	private List<Class<?>> preferredInterfaces;
 	private Map<String, MethodConfiguration> configurations;
-	private Map<MethodArgTypes, Invocation> methodCache = new HashMap<MethodArgTypes, Invocation>();
+	private boolean configurationsShared;
+	private volatile InvocationCache methodCache;
+	private int cacheCapacity = InvocationCache.DEFAULT_CAPACITY;
+	private boolean staticDispatch;
 
 	/**
-	 * Allows the specification or several configurations for methods in the
-	 * mixed instance.
+	 * The configuration of a method in the mixed instance. Configurations are
+	 * immutable and interned so equal configurations are the same object.
 	 * 
 	 * @author m4ktub
 	 */
-	public static class MethodConfiguration {
-		private String rename;
-		public Class<?>[] curriedTypes;
-		private Object[] curriedArgs;
-		private DuckWing wing;
+	public static final class MethodConfiguration {
+		private static final Interner<MethodConfiguration> shared = new Interner<MethodConfiguration>();
+
+		private static final MethodConfiguration EMPTY = new MethodConfiguration(null, null, null, null);
+
+		private final String rename;
+		private final Class<?>[] curriedTypes;
+		private final Object[] curriedArgs;
+		private volatile CurryPlan curryPlan;
+		private final DuckWing wing;
+		private final int hash;
+
+		private MethodConfiguration(String rename, Class<?>[] curriedTypes, Object[] curriedArgs, DuckWing wing) {
+			this.rename = rename;
+			this.curriedTypes = curriedTypes == null ? null : curriedTypes.clone();
+			this.curriedArgs = curriedArgs == null ? null : curriedArgs.clone();
+			this.wing = wing;
+
+			int hash = rename == null ? 0 : rename.hashCode();
+			hash = 31 * hash + Arrays.hashCode(this.curriedTypes);
+			hash = 31 * hash + identityHashCode(this.curriedArgs);
+			hash = 31 * hash + (wing == null ? 0 : wing.hashCode());
+			this.hash = hash;
+		}
+
+		private static MethodConfiguration of(String rename, Class<?>[] curriedTypes, Object[] curriedArgs, DuckWing wing) {
+			return shared.intern(new MethodConfiguration(rename, curriedTypes, curriedArgs, wing));
+		}
+
+		/**
+		 * @param methodName
+		 *            The name of the instance method to call instead.
+		 * @return The shared configuration equal to this one but renamed.
+		 */
+		public MethodConfiguration withRename(String methodName) {
+			return of(methodName, curriedTypes, curriedArgs, wing);
+		}
+
+		/**
+		 * @param types
+		 *            The concrete types of the instance method arguments.
+		 * @param args
+		 *            The constants passed to the method.
+		 * @return The shared configuration equal to this one but curried.
+		 * @see Mixed#curry(String, Class[], Object[])
+		 */
+		public MethodConfiguration withCurry(Class<?>[] types, Object[] args) {
+			return of(rename, types, args, wing);
+		}
+
+		/**
+		 * @param handler
+		 *            The around logic of the method.
+		 * @return The shared configuration equal to this one but wrapped.
+		 */
+		public MethodConfiguration withAroundHandler(DuckWing handler) {
+			return of(rename, curriedTypes, curriedArgs, handler);
+		}
 
 		public boolean isRenamed() {
 			return rename != null;
@@ -79,14 +119,41 @@ public class Mixed {
 			return curriedArgs != null && curriedArgs.length > 0;
 		}
 
+		/**
+		 * @return The curried arguments. The array is shared and must not be
+		 *         modified.
+		 */
 		public Object[] getCurriedArgs() {
 			return curriedArgs;
 		}
 
+		/**
+		 * @return The curried types. The array is shared and must not be
+		 *         modified.
+		 */
 		public Class<?>[] getCurriedTypes() {
 			return curriedTypes;
 		}
 
+		/**
+		 * The plan is only compiled when first needed so that configurations
+		 * discarded in favor of an equal, interned, configuration are not
+		 * compiled.
+		 * 
+		 * @return The compiled curry configuration or <code>null</code> if
+		 *         the method is not curried.
+		 */
+		public CurryPlan getCurryPlan() {
+			CurryPlan plan = curryPlan;
+			if (plan == null && isCurried()) {
+				// compiling twice is harmless since the plan is immutable
+				plan = CurryPlan.of(curriedTypes, curriedArgs);
+				curryPlan = plan;
+			}
+
+			return plan;
+		}
+
 		public boolean isWrapped() {
 			return wing != null;
 		}
@@ -94,6 +161,124 @@ public class Mixed {
 		public DuckWing getAroundHandler() {
 			return wing;
 		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		/**
+		 * Curried arguments are compared by identity since the same constants
+		 * must be passed to the method.
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+
+			if (!(obj instanceof MethodConfiguration)) {
+				return false;
+			}
+
+			MethodConfiguration other = (MethodConfiguration) obj;
+			if (hash != other.hash) {
+				return false;
+			}
+
+			if (rename == null ? other.rename != null : !rename.equals(other.rename)) {
+				return false;
+			}
+
+			if (wing == null ? other.wing != null : !wing.equals(other.wing)) {
+				return false;
+			}
+
+			return Arrays.equals(curriedTypes, other.curriedTypes) && identityEquals(curriedArgs, other.curriedArgs);
+		}
+
+		private static int identityHashCode(Object[] values) {
+			if (values == null) {
+				return 0;
+			}
+
+			int hash = 1;
+			for (Object value : values) {
+				hash = 31 * hash + System.identityHashCode(value);
+			}
+
+			return hash;
+		}
+
+		private static boolean identityEquals(Object[] values, Object[] others) {
+			if (values == null || others == null) {
+				return values == others;
+			}
+
+			if (values.length != others.length) {
+				return false;
+			}
+
+			for (int i = 0; i < values.length; i++) {
+				if (values[i] != others[i]) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+	}
+
+	/**
+	 * An instance created by a {@link Mixer} on first use. The holder is
+	 * shared by the frozen copies of the mixed instance so that only one
+	 * instance is ever created.
+	 */
+	private static final class LazyInstance {
+		private final Class<?> type;
+		private final Mixer factory;
+		private final Mixin mixin;
+		private volatile Object instance;
+
+		public LazyInstance(Class<?> type, Mixer factory, Mixin mixin) {
+			this.type = type;
+			this.factory = factory;
+			this.mixin = mixin;
+		}
+
+		public boolean isCreated() {
+			return instance != null;
+		}
+
+		public Object get() {
+			Object result = instance;
+			if (result == null) {
+				synchronized (this) {
+					result = instance;
+					if (result == null) {
+						result = create();
+						instance = result;
+					}
+				}
+			}
+
+			return result;
+		}
+
+		private Object create() {
+			Object result = factory.in(mixin);
+			if (result == null) {
+				String message = String.format("Mixer produced null. Cannot use null as an implementation.");
+				throw new IllegalStateException(message);
+			}
+
+			if (!type.isInstance(result)) {
+				String message = String.format("Mixer produced %s. Expected an instance of %s.", result.getClass().getName(), type.getName());
+				throw new IllegalStateException(message);
+			}
+
+			return result;
+		}
 	}
 
 	/**
@@ -104,13 +289,221 @@ public class Mixed {
 	 */
 	public Mixed(Object instance) {
 		this.instance = instance;
+		this.lazy = null;
+		this.weak = null;
+		this.metadata = instance == null ? null : ClassMetadata.of(instance.getClass());
+		this.frozen = false;
+	}
+
+	/**
+	 * Creates a placeholder for instances of the given class. Methods are
+	 * resolved with the class and the placeholder is replaced by actual
+	 * instances when a template is bound.
+	 * 
+	 * @param type
+	 *            The class of the instances.
+	 * @see MixinTemplate
+	 */
+	Mixed(Class<?> type) {
+		this(type, null, null);
+	}
+
+	/**
+	 * Creates a mixed instance that is weakly referenced.
+	 * 
+	 * @param instance
+	 *            The original instance made configurable.
+	 * @param queue
+	 *            The queue notified when the instance is collected.
+	 * @see Mixin#mixWeak(Object)
+	 */
+	Mixed(Object instance, ReferenceQueue<Object> queue) {
+		this.instance = null;
+		this.lazy = null;
+		this.weak = new WeakReference<Object>(instance, queue);
+		this.metadata = ClassMetadata.of(instance.getClass());
+		this.frozen = false;
+	}
+
+	/**
+	 * Creates a mixed instance that is created by the factory when first
+	 * needed. Methods are resolved with the given class.
+	 * 
+	 * @param type
+	 *            The class of the instance.
+	 * @param factory
+	 *            The factory of the instance or <code>null</code> for a
+	 *            placeholder.
+	 * @param mixin
+	 *            The mixin given to the factory.
+	 * @see Mixin#mixLazy(Class, Mixer)
+	 */
+	Mixed(Class<?> type, Mixer factory, Mixin mixin) {
+		this.instance = null;
+		this.lazy = factory == null ? null : new LazyInstance(type, factory, mixin);
+		this.weak = null;
+		this.metadata = ClassMetadata.of(type);
+		this.frozen = false;
+	}
+
+	/**
+	 * Creates an immutable copy of a mixed instance, with the same
+	 * configuration, for a frozen mixin.
+	 * 
+	 * @param source
+	 *            The mixed instance to copy.
+	 * @param mixin
+	 *            The frozen mixin where the copy is mixed.
+	 * @see Mixin#freeze(Class...)
+	 */
+	Mixed(Mixed source, Mixin mixin) {
+		this(source, mixin, source.instance, source.lazy, source.weak);
+	}
+
+	/**
+	 * Creates an immutable copy of a mixed instance, with the same
+	 * configuration and resolved with the same class, for another instance.
+	 * 
+	 * @param source
+	 *            The mixed instance to copy.
+	 * @param mixin
+	 *            The frozen mixin where the copy is mixed.
+	 * @param instance
+	 *            The instance of the copy.
+	 */
+	Mixed(Mixed source, Mixin mixin, Object instance) {
+		this(source, mixin, instance, null, null);
+	}
+
+	private Mixed(Mixed source, Mixin mixin, Object instance, LazyInstance lazy, WeakReference<Object> weak) {
+		this.instance = instance;
+		this.lazy = lazy;
+		this.weak = weak;
+		this.metadata = source.metadata;
+		this.frozen = true;
+		this.mixin = mixin;
+		this.cacheCapacity = source.cacheCapacity;
+		this.staticDispatch = source.staticDispatch;
+
+		// configurations are shared until the source is configured again
+		this.preferredInterfaces = source.preferredInterfaces;
+		this.configurations = source.configurations;
+		if (!source.frozen) {
+			source.configurationsShared = true;
+		}
 	}
 
 	/**
-	 * @return The original instance made configurable.
+	 * @return The original instance made configurable. An instance mixed
+	 *         lazily is created by the first call and a weakly mixed instance
+	 *         is <code>null</code> once collected.
 	 */
 	public Object getInstance() {
-		return instance;
+		if (weak != null) {
+			return weak.get();
+		}
+
+		return lazy == null ? instance : lazy.get();
+	}
+
+	/**
+	 * @return <code>true</code> if the instance is mixed lazily and was not
+	 *         created yet.
+	 */
+	boolean isPending() {
+		return lazy != null && !lazy.isCreated();
+	}
+
+	/**
+	 * @return <code>true</code> if the instance was mixed weakly and was
+	 *         already collected.
+	 */
+	boolean isCollected() {
+		return weak != null && weak.get() == null;
+	}
+
+	/**
+	 * @return <code>true</code> if the instance exists and may be strongly
+	 *         referenced by the instances of the interfaces.
+	 */
+	boolean isStrong() {
+		return weak == null && !isPending();
+	}
+
+	/**
+	 * Binds a resolved method to the instance. If the instance was not
+	 * created yet then it is only created when the invocation first proceeds.
+	 * A weakly mixed instance is obtained on each call so that the invocation
+	 * does not keep it alive.
+	 * 
+	 * @param binding
+	 *            The resolved method.
+	 * @param around
+	 *            The around logic to apply or <code>null</code>.
+	 * @param curryPlan
+	 *            The compiled curry configuration or <code>null</code>.
+	 * @return The invocation.
+	 * @see MethodBinding#bind(Object, DuckWing, CurryPlan)
+	 */
+	public Invocation bind(MethodBinding binding, DuckWing around, CurryPlan curryPlan) {
+		if (!binding.isResolved()) {
+			throw new IllegalStateException("Cannot bind a failed resolution.");
+		}
+
+		if (weak != null) {
+			return new WeakInvocation(this, around, binding, curryPlan);
+		}
+
+		if (isPending()) {
+			return new LazyInvocation(this, around, binding, curryPlan);
+		}
+
+		return binding.bind(getInstance(), around, curryPlan);
+	}
+
+	/**
+	 * @return The index of the public methods of the class used to resolve
+	 *         methods, usually the instance's class.
+	 */
+	public ClassMetadata getMetadata() {
+		return metadata;
+	}
+
+	/**
+	 * Associates this instance with the mixin it was mixed in so that the
+	 * mixin is notified of configuration changes.
+	 * 
+	 * @param mixin
+	 *            The mixin where the instance was mixed.
+	 */
+	void setMixin(Mixin mixin) {
+		this.mixin = mixin;
+	}
+
+	/**
+	 * @return <code>true</code> if this instance belongs to a frozen mixin and
+	 *         cannot be configured.
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen) {
+			throw new IllegalStateException("The mixed instance belongs to a frozen mixin and cannot be configured.");
+		}
+	}
+
+	/**
+	 * Discards resolutions that may no longer be valid after a configuration
+	 * change.
+	 */
+	private void changed() {
+		clearInvocationCache();
+
+		if (mixin != null) {
+			mixin.changed();
+		}
 	}
 
 	/**
@@ -133,6 +526,17 @@ public class Mixed {
 		return this.preferredInterfaces != null && this.preferredInterfaces.contains(kind);
 	}
 
+	/**
+	 * @return The interfaces this instance was configured to prefer.
+	 */
+	List<Class<?>> getPreferredInterfaces() {
+		if (preferredInterfaces == null) {
+			return Collections.emptyList();
+		}
+
+		return preferredInterfaces;
+	}
+
 	/**
 	 * If this instance has any configuration for the given interface method
 	 * name.
@@ -146,6 +550,14 @@ public class Mixed {
 		return configurations != null && configurations.containsKey(methodName);
 	}
 
+	/**
+	 * @return <code>true</code> if some method of this instance was
+	 *         configured.
+	 */
+	boolean hasConfigurations() {
+		return configurations != null && !configurations.isEmpty();
+	}
+
 	/**
 	 * Obtains the existing configuration object for the given interface method
 	 * name.
@@ -191,8 +603,12 @@ public class Mixed {
 	 * @param kind
 	 *            The interface to specialize in.
 	 * @return The same mixed abstraction to allow fluid configuration.
+	 * @throws IllegalStateException
+	 *             If the instance belongs to a frozen mixin.
 	 */
 	public Mixed preferring(Class<?> kind) {
+		checkNotFrozen();
+
 		if (kind == null) {
 			throw new IllegalArgumentException("Cannot pass null when specializing a mixed instance.");
 		}
@@ -202,11 +618,11 @@ public class Mixed {
 			throw new IllegalArgumentException(message);
 		}
 
-		if (this.preferredInterfaces == null) {
-			this.preferredInterfaces = new ArrayList<Class<?>>(1);
-		}
+		List<Class<?>> preferences = new ArrayList<Class<?>>(getPreferredInterfaces());
+		preferences.add(kind);
 
-		this.preferredInterfaces.add(kind);
+		this.preferredInterfaces = sharedPreferences.intern(Collections.unmodifiableList(preferences));
+		changed();
 		return this;
 	}
 
@@ -214,19 +630,58 @@ public class Mixed {
 	 * Ensures a method configuration object exists for the interface method
 	 * name. If the configuration object does not exist it will be created.
 	 * 
+	 * <p>
+	 * Configurations are immutable. Use
+	 * {@link #configureMethod(String, MethodConfiguration)} with a derived
+	 * configuration to change it.
+	 * 
 	 * @param methodName
 	 *            The name of the interface method that would be called.
 	 * @return The method configuration object for the identified method.
+	 * @throws IllegalStateException
+	 *             If the instance belongs to a frozen mixin.
 	 */
 	protected MethodConfiguration configureMethod(String methodName) {
+		MethodConfiguration configuration = getConfigurationFor(methodName);
+		if (configuration == null) {
+			configuration = MethodConfiguration.EMPTY;
+			configureMethod(methodName, configuration);
+		}
+
+		return configuration;
+	}
+
+	/**
+	 * Replaces the configuration of an interface method. The configurations
+	 * are copied only if they are shared with a frozen copy of this instance.
+	 * 
+	 * @param methodName
+	 *            The name of the interface method that would be called.
+	 * @param configuration
+	 *            The new configuration of the method.
+	 * @throws IllegalStateException
+	 *             If the instance belongs to a frozen mixin.
+	 */
+	protected void configureMethod(String methodName, MethodConfiguration configuration) {
+		checkNotFrozen();
+
 		if (this.configurations == null) {
-			this.configurations = new HashMap<String, MethodConfiguration>();
-			this.configurations.put(methodName, new MethodConfiguration());
-		} else if (!this.configurations.containsKey(methodName)) {
-			this.configurations.put(methodName, new MethodConfiguration());
+			this.configurations = new ConcurrentHashMap<String, MethodConfiguration>();
+		} else if (this.configurationsShared) {
+			this.configurations = new ConcurrentHashMap<String, MethodConfiguration>(this.configurations);
 		}
 
-		return this.configurations.get(methodName);
+		this.configurationsShared = false;
+		this.configurations.put(methodName, configuration);
+		changed();
+	}
+
+	/**
+	 * @return The configuration of the method or an empty configuration.
+	 */
+	private MethodConfiguration configurationOf(String methodName) {
+		MethodConfiguration configuration = getConfigurationFor(methodName);
+		return configuration == null ? MethodConfiguration.EMPTY : configuration;
 	}
 
 	/**
@@ -240,7 +695,7 @@ public class Mixed {
 	 * @return The same mixed abstraction to allow fluid configuration.
 	 */
 	public Mixed rename(String callName, String methodName) {
-		configureMethod(callName).rename = methodName;
+		configureMethod(callName, configurationOf(callName).withRename(methodName));
 		return this;
 	}
 
@@ -255,8 +710,9 @@ public class Mixed {
 	 * <p>
 	 * If the interface's arguments are to be passed as the last arguments of
 	 * the instance's method then you just need to specify the constants.
-	 * Otherwise you have to use {@value #CURRY_SKIP} to mark a positions as not
-	 * curried.
+	 * Otherwise you have to use {@link Invocation#CURRY_MISS} to mark a
+	 * positions as not curried. The interface's arguments fill those positions
+	 * in order and any remaining arguments are passed after the constants.
 	 * 
 	 * @param callName
 	 *            The name of the interface method that would be called.
@@ -264,13 +720,12 @@ public class Mixed {
 	 *            The concrete types of the instance method arguments.
 	 * @param args
 	 *            The constants to be passed to the method in each invocation or
-	 *            the value {@value #CURRY_SKIP} to leave as position for an
-	 *            interface argument.
+	 *            the value {@link Invocation#CURRY_MISS} to leave as position
+	 *            for an interface argument.
 	 * @return The same mixed abstraction to allow fluid configuration.
 	 */
 	public Mixed curry(String callName, Class<?>[] types, Object[] args) {
-		configureMethod(callName).curriedTypes = types;
-		configureMethod(callName).curriedArgs = args;
+		configureMethod(callName, configurationOf(callName).withCurry(types, args));
 		return this;
 	}
 
@@ -284,12 +739,117 @@ public class Mixed {
 	 *            The method invocation handler to be used in any invocation of
 	 *            the given method.
 	 * @return The same mixed abstraction to allow fluid configuration.
+	 * @see #around(String, DuckWing...)
 	 */
 	public Mixed around(String callName, DuckWing handler) {
-		configureMethod(callName).wing = handler;
+		return around(callName, new DuckWing[] { handler });
+	}
+
+	/**
+	 * Allows to put an method invocation under {@link DuckWing} handlers to
+	 * perform a more advanced control of the invocation. The handlers are
+	 * applied in order, the first being the outermost, and replace any
+	 * handlers previously given for the same method.
+	 * 
+	 * <p>
+	 * Each handler proceeds with the next one so all handlers, except the
+	 * last, must be {@link DuckHandleWing} instances. The handlers are
+	 * composed once into a single call path for each resolved method.
+	 * 
+	 * @param callName
+	 *            The name of the interface method that would be called.
+	 * @param handlers
+	 *            The method invocation handlers to be used in any invocation
+	 *            of the given method.
+	 * @return The same mixed abstraction to allow fluid configuration.
+	 * @throws IllegalArgumentException
+	 *             If a handler, other than the last, cannot wrap other
+	 *             handlers.
+	 * @see Mixin#around(DuckWing)
+	 */
+	public Mixed around(String callName, DuckWing... handlers) {
+		List<DuckWing> wings = new ArrayList<DuckWing>(handlers.length);
+		for (DuckWing handler : handlers) {
+			if (handler != null) {
+				wings.add(handler);
+			}
+		}
+
+		DuckWing wing = wings.isEmpty() ? null : DuckWingStack.of(wings.subList(0, wings.size() - 1), wings.get(wings.size() - 1));
+		configureMethod(callName, configurationOf(callName).withAroundHandler(wing));
+		return this;
+	}
+
+	/**
+	 * Obtains the handlers that apply to the invocations of an interface
+	 * method. Those are the handlers of the mixin, if any, followed by the
+	 * handlers configured for the method.
+	 * 
+	 * @param callName
+	 *            The name of the interface method that would be called.
+	 * @return A handler that applies all handlers in order or
+	 *         <code>null</code> if there are no handlers.
+	 */
+	public DuckWing getAroundHandler(String callName) {
+		MethodConfiguration configuration = getConfigurationFor(callName);
+		DuckWing wing = configuration == null ? null : configuration.getAroundHandler();
+
+		if (mixin == null || mixin.getAroundHandlers().isEmpty()) {
+			return wing;
+		}
+
+		return DuckWingStack.of(mixin.getAroundHandlers(), wing);
+	}
+
+	/**
+	 * Limits the number of invocations cached for this instance. Each
+	 * combination of interface method and argument types is cached
+	 * separately so instances that receive arguments of many different types
+	 * may benefit from a larger cache.
+	 * 
+	 * @param capacity
+	 *            The maximum number of cached invocations.
+	 * @return The same mixed abstraction to allow fluid configuration.
+	 * @throws IllegalStateException
+	 *             If the instance belongs to a frozen mixin.
+	 * @see #getInvocationCache()
+	 */
+	public Mixed caching(int capacity) {
+		checkNotFrozen();
+
+		this.methodCache = new InvocationCache(capacity);
+		this.cacheCapacity = capacity;
+		return this;
+	}
+
+	/**
+	 * Resolves the methods of this instance using only the declared parameter
+	 * types of the interface methods. The actual arguments of each call are
+	 * not inspected to find a more specific overload, which allows the
+	 * resolution to be done once for each interface method.
+	 * 
+	 * @return The same mixed abstraction to allow fluid configuration.
+	 * @throws IllegalStateException
+	 *             If the instance belongs to a frozen mixin.
+	 * @see #isStaticDispatch()
+	 */
+	public Mixed staticDispatch() {
+		checkNotFrozen();
+
+		this.staticDispatch = true;
+		changed();
 		return this;
 	}
 
+	/**
+	 * @return <code>true</code> if the methods of this instance are resolved
+	 *         without considering the actual arguments of each call.
+	 * @see #staticDispatch()
+	 */
+	public boolean isStaticDispatch() {
+		return staticDispatch;
+	}
+
 	/**
 	 * Obtains a previously cached invocation.
 	 * 
@@ -302,7 +862,8 @@ public class Mixed {
 	 *         the method and argument types combination.
 	 */
 	public Invocation getCachedInvocation(Method intfMethod, Type[] argTypes) {
-		return methodCache.get(new MethodArgTypes(intfMethod, argTypes));
+		InvocationCache cache = methodCache;
+		return cache == null ? null : cache.get(intfMethod, argTypes);
 	}
 
 	/**
@@ -316,7 +877,32 @@ public class Mixed {
 	 *            The invocation that was resolved and will be cached.
 	 */
 	public void cacheInvocation(Method intfMethod, Type[] argTypes, Invocation invocation) {
-		methodCache.put(new MethodArgTypes(intfMethod, argTypes), invocation);
+		getInvocationCache().put(intfMethod, argTypes, invocation);
+	}
+
+	/**
+	 * @return The cache of invocations resolved for this instance, which
+	 *         provides usage statistics.
+	 */
+	public InvocationCache getInvocationCache() {
+		// only instances resolved by the actual arguments need a cache
+		InvocationCache cache = methodCache;
+		if (cache == null) {
+			cache = new InvocationCache(cacheCapacity);
+			methodCache = cache;
+		}
+
+		return cache;
+	}
+
+	/**
+	 * Discards the cached invocations, if any.
+	 */
+	void clearInvocationCache() {
+		InvocationCache cache = methodCache;
+		if (cache != null) {
+			cache.clear();
+		}
 	}
 
 }
\ No newline at end of file
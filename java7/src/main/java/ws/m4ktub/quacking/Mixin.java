@@ -1,10 +1,20 @@
 package ws.m4ktub.quacking;
 
-import java.lang.reflect.Proxy;
+import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import ws.m4ktub.quacking.helpers.Casts;
+import ws.m4ktub.quacking.helpers.Reflections;
 
 /**
  * The {@linkplain Mixin} is the main {@link DuckType} instance. You create a
@@ -55,19 +65,396 @@ import ws.m4ktub.quacking.helpers.Casts;
  * regardless of the order of mixin. Otherwise implementations are used in the
  * order they are mixed together.
  * 
+ * <p>
+ * The instance returned by {@link #as(Class)} is created once for each
+ * interface and reused until another instance is mixed or configured. A
+ * single instance can also implement several interfaces, with
+ * {@link #as(Class, Class...)}, in which case it is created once for each set of
+ * interfaces.
+ * 
+ * <p>
+ * Instances that are expensive to create can be mixed with
+ * {@link #mixLazy(Class, Mixer)}. They are resolved with their class and only
+ * created by the first call that needs them.
+ * 
+ * <p>
+ * Instances that should not be kept alive by the mixin can be mixed with
+ * {@link #mixWeak(Object)}. Once collected they are removed from the mixin
+ * and calls go to the other mixed instances.
+ * 
+ * <p>
+ * Once configured, a mixin can be frozen into an immutable snapshot with
+ * {@link #freeze(Class...)}. The snapshot resolves its methods once and its
+ * proxies can be shared between threads.
+ * 
  * @author m4ktub
  */
 public class Mixin implements DuckType {
 
-	private List<Mixed> implementations;
-	private DuckInvocationHandler invocationHandler;
+	/**
+	 * The number of argument class combinations remembered by each method
+	 * resolved through multi-dispatch, unless configured otherwise.
+	 * 
+	 * @see #setInlineCacheSize(int)
+	 */
+	public static final int DEFAULT_INLINE_CACHE_SIZE = 4;
+
+	private final List<Mixed> implementations;
+	private final ConcurrentMap<Object, DuckInvocationHandler> invocationHandlers;
+	private final ConcurrentMap<Object, DispatchTable> dispatchTables;
+	private final ConcurrentMap<Object, Object> ducks;
+	private final List<DuckWing> wings;
+	private final DuckEngine engine;
+	private final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+	private final boolean frozen;
+	private int inlineCacheSize = DEFAULT_INLINE_CACHE_SIZE;
+	private boolean passThrough;
+	private volatile int version;
 
 	/**
 	 * Creates a new mixin with no implementations.
 	 */
 	public Mixin() {
-		implementations = new ArrayList<Mixed>();
-		invocationHandler = new DuckInvocationHandler(this);
+		this(DuckEngine.PROXY);
+	}
+
+	/**
+	 * Creates a new mixin with no implementations that uses a specific engine
+	 * to create the instances returned by {@link #as(Class)}.
+	 * 
+	 * @param engine
+	 *            The engine to use.
+	 */
+	public Mixin(DuckEngine engine) {
+		if (engine == null) {
+			throw new IllegalArgumentException("The engine must not be null.");
+		}
+
+		// weak instances are removed while other threads read
+		this.implementations = new CopyOnWriteArrayList<Mixed>();
+		this.invocationHandlers = new ConcurrentHashMap<Object, DuckInvocationHandler>();
+		this.dispatchTables = new ConcurrentHashMap<Object, DispatchTable>();
+		this.ducks = new ConcurrentHashMap<Object, Object>();
+		this.wings = new ArrayList<DuckWing>();
+		this.engine = engine;
+		this.frozen = false;
+	}
+
+	/**
+	 * Creates a frozen copy of a mixin.
+	 * 
+	 * @param source
+	 *            The mixin to copy.
+	 * @param instances
+	 *            The instances that replace the mixed instances, in order, or
+	 *            <code>null</code> to keep the same instances.
+	 */
+	private Mixin(Mixin source, Object[] instances) {
+		Mixed[] copies = source.implementations.toArray(new Mixed[0]);
+		for (int i = 0; i < copies.length; i++) {
+			Mixed mixed = copies[i];
+			copies[i] = instances == null ? new Mixed(mixed, this) : new Mixed(mixed, this, instances[i]);
+		}
+
+		this.implementations = Collections.unmodifiableList(Arrays.asList(copies));
+		this.invocationHandlers = new ConcurrentHashMap<Object, DuckInvocationHandler>();
+		this.dispatchTables = new ConcurrentHashMap<Object, DispatchTable>();
+		this.ducks = new ConcurrentHashMap<Object, Object>();
+		this.wings = Collections.unmodifiableList(new ArrayList<DuckWing>(source.wings));
+		this.engine = source.engine;
+		this.frozen = true;
+		this.inlineCacheSize = source.inlineCacheSize;
+		this.passThrough = source.passThrough;
+	}
+
+	/**
+	 * Creates an immutable snapshot of this mixin. The snapshot has the same
+	 * instances, with the same configuration, but rejects any further mixing
+	 * or configuration with an {@link IllegalStateException}. Changes to this
+	 * mixin do not affect the snapshot.
+	 * 
+	 * <p>
+	 * Since the snapshot never changes, the methods of each interface are
+	 * resolved only once. The given interfaces, and all interfaces preferred
+	 * by the mixed instances, are resolved immediately so that no resolution
+	 * happens when the snapshot is first used.
+	 * 
+	 * @param kinds
+	 *            The interfaces to resolve immediately.
+	 * @return A frozen mixin.
+	 */
+	public Mixin freeze(Class<?>... kinds) {
+		Mixin frozenMixin = new Mixin(this, null);
+
+		for (Class<?> kind : kinds) {
+			if (kind == null || !kind.isInterface()) {
+				String message = String.format("An interface must be used. Cannot resolve \"%s\".", kind == null ? null : kind.getName());
+				throw new IllegalArgumentException(message);
+			}
+
+			frozenMixin.getDispatchTable(kind);
+		}
+
+		for (Mixed mixed : frozenMixin.implementations) {
+			for (Class<?> kind : mixed.getPreferredInterfaces()) {
+				frozenMixin.getDispatchTable(kind);
+			}
+		}
+
+		return frozenMixin;
+	}
+
+	/**
+	 * Creates a frozen copy of this mixin where the mixed instances are
+	 * replaced by the given instances. Methods are still resolved with the
+	 * classes of the original instances.
+	 * 
+	 * @param instances
+	 *            One instance for each mixed instance, in order.
+	 * @return A frozen mixin.
+	 * @see MixinTemplate#bind(Object...)
+	 */
+	Mixin bind(Object[] instances) {
+		return new Mixin(this, instances);
+	}
+
+	/**
+	 * @return <code>true</code> if this mixin is an immutable snapshot created
+	 *         by {@link #freeze(Class...)}.
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * @return The engine used to create the instances returned by
+	 *         {@link #as(Class)}.
+	 */
+	public DuckEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * @return The number of argument class combinations remembered by each
+	 *         method resolved through multi-dispatch.
+	 */
+	public int getInlineCacheSize() {
+		return inlineCacheSize;
+	}
+
+	/**
+	 * Defines how many combinations of argument classes are remembered by each
+	 * method that is resolved, in each call, through multi-dispatch. Calls
+	 * with remembered argument classes do not need to be resolved again. After
+	 * more combinations are used the method is always resolved, relying only
+	 * on the caches of the mixed instances.
+	 * 
+	 * @param inlineCacheSize
+	 *            The number of combinations to remember or <tt>0</tt> to
+	 *            always resolve the method.
+	 * @throws IllegalStateException
+	 *             If the mixin is frozen.
+	 */
+	public void setInlineCacheSize(int inlineCacheSize) {
+		if (frozen) {
+			throw new IllegalStateException("The mixin is frozen. Cannot change the inline cache size.");
+		}
+
+		if (inlineCacheSize < 0) {
+			String message = String.format("The inline cache size cannot be negative. Cannot use %d.", inlineCacheSize);
+			throw new IllegalArgumentException(message);
+		}
+
+		this.inlineCacheSize = inlineCacheSize;
+		changed();
+	}
+
+	/**
+	 * @return <code>true</code> if {@link #as(Class)} skips the mixin when a
+	 *         single instance implements the whole interface.
+	 * @see #setPassThrough(boolean)
+	 */
+	public boolean isPassThrough() {
+		return passThrough;
+	}
+
+	/**
+	 * Defines if {@link #as(Class)} may skip the mixin when a single mixed
+	 * instance, without any configuration, implements the interface and is
+	 * the resolution of every interface method. In that case the calls do not
+	 * need to be resolved and the result is the mixed instance itself, if it
+	 * is a {@link DuckType}, or an instance of a generated class that calls
+	 * the mixed instance directly and delegates only the {@link DuckType}
+	 * methods to the mixin.
+	 * 
+	 * <p>
+	 * As with {@link DuckEngine#GENERATED}, the instance reflects the mixin
+	 * when it was created. Instances mixed, or configured, afterwards are
+	 * only considered by instances obtained after the change.
+	 * 
+	 * @param passThrough
+	 *            <code>true</code> to skip the mixin when possible.
+	 * @throws IllegalStateException
+	 *             If the mixin is frozen.
+	 */
+	public void setPassThrough(boolean passThrough) {
+		if (frozen) {
+			throw new IllegalStateException("The mixin is frozen. Cannot change the pass-through mode.");
+		}
+
+		this.passThrough = passThrough;
+		changed();
+	}
+
+	/**
+	 * Puts the invocations of all methods, of all mixed instances, under a
+	 * {@link DuckWing} handler. Handlers of the mixin are applied in the order
+	 * they are added and before the handlers configured for each method.
+	 * 
+	 * <p>
+	 * Since the handler must proceed with the handlers of each method, it
+	 * must be a {@link DuckHandleWing}.
+	 * 
+	 * @param handler
+	 *            The handler to apply to every invocation.
+	 * @return The same mixin to allow fluid configuration.
+	 * @throws IllegalStateException
+	 *             If the mixin is frozen.
+	 * @see Mixed#around(String, DuckWing...)
+	 */
+	public Mixin around(DuckWing handler) {
+		if (frozen) {
+			throw new IllegalStateException("The mixin is frozen. Cannot add handlers.");
+		}
+
+		if (handler == null) {
+			throw new IllegalArgumentException("The handler must not be null.");
+		}
+
+		DuckWingStack.checkStackable(Collections.singletonList(handler));
+		wings.add(handler);
+
+		// invocations resolved by each instance include the handlers
+		for (Mixed mixed : implementations) {
+			mixed.clearInvocationCache();
+		}
+
+		changed();
+		return this;
+	}
+
+	/**
+	 * @return The handlers applied to all invocations, in order.
+	 */
+	List<DuckWing> getAroundHandlers() {
+		return wings;
+	}
+
+	/**
+	 * @return The mixed instances in the order they were mixed.
+	 */
+	List<Mixed> getImplementations() {
+		return implementations;
+	}
+
+	/**
+	 * Obtains the key identifying a set of interfaces in the caches of the
+	 * mixin. A single interface is its own key.
+	 */
+	private static Object getKey(Class<?>[] kinds) {
+		if (kinds.length == 1) {
+			return kinds[0];
+		}
+
+		return Collections.unmodifiableSet(new HashSet<Class<?>>(Arrays.asList(kinds)));
+	}
+
+	/**
+	 * Obtains the handler that resolves calls through this mixin for proxies
+	 * of the given interfaces.
+	 * 
+	 * @param kinds
+	 *            The interfaces being used.
+	 * @return The invocation handler for the interfaces.
+	 */
+	DuckInvocationHandler getInvocationHandler(Class<?>... kinds) {
+		Object key = getKey(kinds);
+		DuckInvocationHandler handler = invocationHandlers.get(key);
+		if (handler == null) {
+			handler = new DuckInvocationHandler(this, kinds);
+
+			DuckInvocationHandler existing = invocationHandlers.putIfAbsent(key, handler);
+			handler = existing != null ? existing : handler;
+		}
+
+		return handler;
+	}
+
+	/**
+	 * Obtains the resolution of all methods of the given interfaces. The
+	 * resolution is done once and reused until the mixin changes.
+	 * 
+	 * @param kinds
+	 *            The interfaces being used.
+	 * @return The dispatch table for the interfaces in the current state of
+	 *         the mixin.
+	 */
+	DispatchTable getDispatchTable(Class<?>... kinds) {
+		Object key = getKey(kinds);
+		DispatchTable table = dispatchTables.get(key);
+		if (table == null || !isCurrent(table)) {
+			if (prune()) {
+				return getDispatchTable(kinds);
+			}
+
+			table = new DispatchTable(this, kinds, version);
+
+			if (frozen) {
+				// keep a single resolution for each interface, unless it was
+				// stored after removing collected instances
+				DispatchTable existing;
+				while ((existing = dispatchTables.putIfAbsent(key, table)) != null) {
+					if (isCurrent(existing)) {
+						table = existing;
+						break;
+					}
+
+					if (dispatchTables.replace(key, existing, table)) {
+						break;
+					}
+				}
+			} else {
+				dispatchTables.put(key, table);
+			}
+		}
+
+		return table;
+	}
+
+	/**
+	 * @param table
+	 *            A dispatch table of this mixin.
+	 * @return <code>true</code> if the table reflects the current state of
+	 *         the mixin.
+	 */
+	boolean isCurrent(DispatchTable table) {
+		return table.getVersion() == version;
+	}
+
+	/**
+	 * @return The number of changes to this mixin.
+	 */
+	int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Discards all resolutions because an instance was mixed or configured.
+	 */
+	void changed() {
+		version++;
+		dispatchTables.clear();
+		ducks.clear();
 	}
 
 	/**
@@ -85,6 +472,10 @@ public class Mixin implements DuckType {
 
 		int preferencePos = 0;
 		for (Mixed mixed : implementations) {
+			if (mixed.isCollected()) {
+				continue;
+			}
+
 			if (mixed.hasPreferenceFor(kind)) {
 				// add candidates with preference first in order
 				candidates.add(preferencePos++, mixed);
@@ -109,6 +500,8 @@ public class Mixin implements DuckType {
 			return false;
 		}
 
+		prune();
+
 		DuckMatcher matcher = new DuckMatcher(kind);
 		for (Object object : getMixed(kind)) {
 			matcher.matchDuckling(object);
@@ -129,6 +522,14 @@ public class Mixin implements DuckType {
 			throw new IllegalArgumentException(message);
 		}
 
+		prune();
+
+		// reuse the instance created for the interface
+		Object duck = ducks.get(kind);
+		if (duck != null) {
+			return Casts.ucast(duck);
+		}
+
 		// threat the null implementation case
 		if (implementations.isEmpty()) {
 			return null;
@@ -140,9 +541,147 @@ public class Mixin implements DuckType {
 			classLoader = this.getClass().getClassLoader();
 		}
 
-		// create proxy ensuring kind and DuckType classes
-		Class<?>[] interfaces = new Class<?>[] { DuckType.class, kind };
-		return Casts.ucast(Proxy.newProxyInstance(classLoader, interfaces, invocationHandler));
+		duck = create(classLoader, kind);
+
+		Object existing = ducks.putIfAbsent(kind, duck);
+		return Casts.ucast(existing != null ? existing : duck);
+	}
+
+	@Override
+	public <T> T as(Class<?> kind, Class<?>... kinds) {
+		List<Class<?>> all = new ArrayList<Class<?>>(kinds.length + 1);
+		all.add(kind);
+		all.addAll(Arrays.asList(kinds));
+
+		Set<Class<?>> distinct = new LinkedHashSet<Class<?>>();
+		for (Class<?> each : all) {
+			if (each == null) {
+				String message = String.format("An interface must be used instead of null.");
+				throw new IllegalArgumentException(message);
+			}
+
+			if (!each.isInterface()) {
+				String message = String.format("An interface must be used. Cannot reimplement class \"%s\".", each.getName());
+				throw new IllegalArgumentException(message);
+			}
+
+			distinct.add(each);
+		}
+
+		Class<?>[] unique = distinct.toArray(new Class<?>[distinct.size()]);
+		if (unique.length == 1) {
+			return Casts.ucast(as(unique[0]));
+		}
+
+		prune();
+
+		// reuse the instance created for the set of interfaces
+		Object key = getKey(unique);
+		Object duck = ducks.get(key);
+		if (duck != null) {
+			return Casts.ucast(duck);
+		}
+
+		// threat the null implementation case
+		if (implementations.isEmpty()) {
+			return null;
+		}
+
+		duck = create(getClassLoader(unique), unique);
+
+		Object existing = ducks.putIfAbsent(key, duck);
+		return Casts.ucast(existing != null ? existing : duck);
+	}
+
+	/**
+	 * Creates the instance of the given interfaces with the engine or, in
+	 * pass-through mode, without going through the mixin.
+	 */
+	private Object create(ClassLoader classLoader, Class<?>... kinds) {
+		if (!passThrough) {
+			return engine.create(this, classLoader, kinds);
+		}
+
+		Mixed single = getPassThrough(kinds);
+		if (single == null) {
+			return engine.create(this, classLoader, kinds);
+		}
+
+		if (single.getInstance() instanceof DuckType) {
+			return single.getInstance();
+		}
+
+		// every method is linked directly to the instance
+		return DuckEngine.GENERATED.create(this, classLoader, kinds);
+	}
+
+	/**
+	 * Finds the mixed instance that resolves all the methods of the
+	 * interfaces without any configuration.
+	 * 
+	 * @return The mixed instance or <code>null</code> if there is no such
+	 *         instance.
+	 */
+	private Mixed getPassThrough(Class<?>[] kinds) {
+		if (!wings.isEmpty()) {
+			return null;
+		}
+
+		DispatchTable table = getDispatchTable(kinds);
+		List<Method> methods = table.getMethods();
+
+		Mixed single = null;
+		for (int i = 0; i < methods.size(); i++) {
+			Class<?> intf = methods.get(i).getDeclaringClass();
+			if (intf == Object.class || intf == DuckType.class) {
+				continue;
+			}
+
+			Mixed mixed = table.getSlot(i).getMixed();
+			if (mixed == null || (single != null && single != mixed)) {
+				return null;
+			}
+
+			single = mixed;
+		}
+
+		// passing through would create or keep the instance
+		if (single == null || single.hasConfigurations() || !single.isStrong()) {
+			return null;
+		}
+
+		for (Class<?> kind : kinds) {
+			if (!kind.isInstance(single.getInstance())) {
+				return null;
+			}
+		}
+
+		return single;
+	}
+
+	/**
+	 * Finds a class loader where all the interfaces are visible, preferring
+	 * the class loader of the first interface.
+	 */
+	private ClassLoader getClassLoader(Class<?>[] kinds) {
+		for (Class<?> candidate : kinds) {
+			ClassLoader classLoader = candidate.getClassLoader();
+			if (classLoader == null) {
+				classLoader = this.getClass().getClassLoader();
+			}
+
+			boolean seesAll = true;
+			for (Class<?> kind : kinds) {
+				seesAll &= Reflections.isVisible(classLoader, kind);
+			}
+
+			if (seesAll) {
+				return classLoader;
+			}
+		}
+
+		String message = String.format("No class loader can see all of %s. Cannot implement them together.", Arrays.toString(kinds));
+		throw new IllegalArgumentException(message);
 	}
 
 	/**
@@ -156,8 +695,45 @@ public class Mixin implements DuckType {
 	 *            The instance to use as implementations of some methods.
 	 * @return A {@link Mixed} abstraction that allows to fine tune the mixed
 	 *         instance.
+	 * @throws IllegalStateException
+	 *             If the mixin is frozen.
 	 */
 	public Mixed mix(Object instance) {
+		return add(new Mixed(produce(instance)));
+	}
+
+	/**
+	 * Mixes a given instance that is only weakly referenced by the mixin. The
+	 * instance must be referenced elsewhere while it is used. Once collected,
+	 * the instance is removed and the calls it would answer go to the other
+	 * mixed instances.
+	 * 
+	 * <p>
+	 * Collected instances are found through a reference queue that is checked
+	 * when the mixin is used, as in {@link #as(Class)} or {@link #is(Class)},
+	 * or when a call finds its instance collected. Calls to the instances of
+	 * the mixin do not check the queue.
+	 * 
+	 * @param instance
+	 *            The instance to use as implementations of some methods.
+	 * @return A {@link Mixed} abstraction that allows to fine tune the mixed
+	 *         instance.
+	 * @throws IllegalStateException
+	 *             If the mixin is frozen.
+	 * @see #prune()
+	 */
+	public Mixed mixWeak(Object instance) {
+		return add(new Mixed(produce(instance), collected));
+	}
+
+	/**
+	 * Obtains the actual implementation of an instance that is being mixed.
+	 */
+	private Object produce(Object instance) {
+		if (frozen) {
+			throw new IllegalStateException("The mixin is frozen. Cannot mix other instances.");
+		}
+
 		if (instance == null) {
 			String message = String.format("Tried to mix null. Cannot use null as an implementation.");
 			throw new IllegalArgumentException(message);
@@ -172,8 +748,111 @@ public class Mixin implements DuckType {
 			}
 		}
 
-		Mixed mixed = new Mixed(instance);
+		return instance;
+	}
+
+	/**
+	 * Removes the weakly mixed instances that were collected. This is done
+	 * when the mixin is used so it only needs to be called to release a mixin
+	 * that is not being used.
+	 * 
+	 * @return <code>true</code> if some instance was removed.
+	 * @see #mixWeak(Object)
+	 */
+	public boolean prune() {
+		boolean found = false;
+		while (collected.poll() != null) {
+			found = true;
+		}
+
+		if (found) {
+			removeCollected();
+		}
+
+		return found;
+	}
+
+	/**
+	 * Removes the collected instances, regardless of the reference queue, and
+	 * discards the resolutions that use them. Frozen mixins keep the
+	 * instances but no longer resolve methods with them.
+	 */
+	void removeCollected() {
+		if (!frozen) {
+			List<Mixed> removed = new ArrayList<Mixed>();
+			for (Mixed mixed : implementations) {
+				if (mixed.isCollected()) {
+					removed.add(mixed);
+				}
+			}
+
+			implementations.removeAll(removed);
+		}
+
+		changed();
+	}
+
+	/**
+	 * Mixes an instance that is only created when first needed. Methods are
+	 * resolved, and {@link #is(Class)} answered, with the given class. The
+	 * factory is called once, with this mixin, by the first call that is
+	 * routed to the instance.
+	 * 
+	 * <pre>
+	 * mixin.mixLazy(Parser.class, new Mixer() {
+	 * 	public Object in(Mixin mixin) {
+	 * 		return new Parser(loadGrammar());
+	 * 	}
+	 * });
+	 * </pre>
+	 * 
+	 * @param type
+	 *            The class of the instance.
+	 * @param factory
+	 *            The factory of the instance. It must produce an instance of
+	 *            the given class.
+	 * @return A {@link Mixed} abstraction that allows to fine tune the mixed
+	 *         instance.
+	 * @throws IllegalStateException
+	 *             If the mixin is frozen.
+	 */
+	public Mixed mixLazy(Class<?> type, Mixer factory) {
+		if (frozen) {
+			throw new IllegalStateException("The mixin is frozen. Cannot mix other instances.");
+		}
+
+		if (type == null || factory == null) {
+			String message = String.format("Tried to mix null. A class and a factory must be used.");
+			throw new IllegalArgumentException(message);
+		}
+
+		return add(new Mixed(type, factory, this));
+	}
+
+	/**
+	 * Mixes a placeholder for instances of the given class.
+	 * 
+	 * @param type
+	 *            The class of the instances.
+	 * @return The placeholder.
+	 * @throws IllegalStateException
+	 *             If the mixin is frozen.
+	 * @see MixinTemplate#mix(Class)
+	 */
+	Mixed mixType(Class<?> type) {
+		if (frozen) {
+			throw new IllegalStateException("The mixin is frozen. Cannot mix other instances.");
+		}
+
+		return add(new Mixed(type));
+	}
+
+	private Mixed add(Mixed mixed) {
+		prune();
+
+		mixed.setMixin(this);
 		implementations.add(mixed);
+		changed();
 		return mixed;
 	}
 
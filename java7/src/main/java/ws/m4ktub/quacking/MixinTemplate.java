@@ -0,0 +1,382 @@
+package ws.m4ktub.quacking;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A <tt>MixinTemplate</tt> describes a mixin by the classes of its instances,
+ * instead of the instances themselves, so that the methods of the interface
+ * are resolved once for every mixin with the same composition. Each call to
+ * {@link #bind(Object...)} then only needs to create the instance of the
+ * interface for the given instances.
+ *
+ * <pre>
+ * MixinTemplate&lt;HttpServletRequest&gt; template = new MixinTemplate&lt;HttpServletRequest&gt;(HttpServletRequest.class);
+ * template.mix(ForceCharacterEncoding.class);
+ * template.mix(HttpServletRequest.class);
+ * ...
+ * HttpServletRequest mixedRequest = template.bind(new ForceCharacterEncoding(&quot;UTF-8&quot;), getRequest());
+ * </pre>
+ *
+ * <p>
+ * The classes are configured as any mixed instance and the template reflects
+ * the configuration when the next instance is bound. Methods are resolved
+ * with the given classes so a bound instance may be of a subclass, or
+ * implement the given interface, but more specific methods of the actual
+ * class are not considered.
+ *
+ * <p>
+ * Methods that always resolve to the same method are called directly on the
+ * bound instances. Other methods, including the {@link DuckType} methods, are
+ * resolved by a frozen mixin with the bound instances that is only created
+ * when first needed.
+ *
+ * <p>
+ * Bound instances implement {@link Rebindable} and can be reused, with other
+ * instances, without being created again. Only methods with
+ * {@link DuckWing wings} need to be bound again to the new instances.
+ *
+ * @author m4ktub
+ * @param <T>
+ *            The interface implemented by the bound instances.
+ */
+public class MixinTemplate<T> {
+
+	/**
+	 * The resolution of the interface for a version of the template.
+	 */
+	private static final class Shape {
+		private final Class<?> kind;
+		private final int version;
+		private final List<Class<?>> types;
+		private final Mixin snapshot;
+		private final DispatchTable table;
+		private final Invocation[] invocations;
+		private final int[] ducklings;
+		private final Constructor<?> constructor;
+
+		public Shape(Class<?> kind, Mixin mixin, List<Class<?>> types) {
+			this.kind = kind;
+			this.version = mixin.getVersion();
+			this.types = new ArrayList<Class<?>>(types);
+			this.snapshot = mixin.freeze(kind);
+			this.table = snapshot.getDispatchTable(kind);
+
+			int size = table.getMethods().size();
+			this.invocations = new Invocation[size];
+			this.ducklings = new int[size];
+
+			List<Mixed> implementations = snapshot.getImplementations();
+			for (int i = 0; i < size; i++) {
+				DispatchTable.Slot slot = table.getSlot(i);
+				invocations[i] = slot.getInvocation();
+				ducklings[i] = implementations.indexOf(slot.getMixed());
+
+				// the mixin reports inaccessible methods
+				MethodBinding binding = invocations[i] == null ? null : invocations[i].getBinding();
+				if (binding == null || binding.getHandle() == null) {
+					ducklings[i] = -1;
+				}
+			}
+
+			ClassLoader classLoader = kind.getClassLoader();
+			if (classLoader == null) {
+				classLoader = MixinTemplate.class.getClassLoader();
+			}
+
+			this.constructor = ProxyDuckEngine.createConstructor(classLoader, new Class<?>[] { DuckType.class, Rebindable.class, kind });
+		}
+	}
+
+	/**
+	 * The handler of an instance bound to the template. The handler is also
+	 * the implementation of {@link Rebindable} for the instance.
+	 */
+	private static final class BoundHandler implements InvocationHandler, Rebindable {
+		private final MixinTemplate<?> template;
+		private volatile Shape shape;
+		private Object[] instances;
+		private boolean bound;
+
+		// created on first use and races only create duplicates
+		private Invocation[] invocations;
+		private volatile Mixin mixin;
+
+		public BoundHandler(MixinTemplate<?> template, Shape shape, Object[] instances) {
+			this.template = template;
+			this.shape = shape;
+			this.instances = instances;
+			this.bound = true;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			Shape current = shape;
+			int ordinal = current.table.getOrdinal(method);
+			int duckling = ordinal < 0 ? -1 : current.ducklings[ordinal];
+			if (duckling < 0) {
+				if (method.getDeclaringClass() == Rebindable.class) {
+					return invokeRebindable(method, args);
+				}
+
+				return getMixin(current).getDispatchTable(current.kind).invoke(proxy, method, args);
+			}
+
+			Object target = instances[duckling];
+			if (target == null) {
+				throw new IllegalStateException("The instance was reset. Cannot invoke methods until it is rebound.");
+			}
+
+			Invocation invocation = current.invocations[ordinal];
+			if (invocation.getAround() == null) {
+				CurryPlan curryPlan = invocation.getCurryPlan();
+				Object[] finalArgs = curryPlan == null ? args : curryPlan.apply(args);
+				return (Object) invocation.getBinding().getHandle().invokeExact(target, finalArgs);
+			}
+
+			return getInvocation(current, ordinal, target).proceeed(args);
+		}
+
+		private Object invokeRebindable(Method method, Object[] args) {
+			switch (method.getName()) {
+			case "rebind":
+				rebind((Object[]) args[0]);
+				return null;
+			case "reset":
+				reset();
+				return null;
+			default:
+				return isBound();
+			}
+		}
+
+		@Override
+		public void rebind(Object... instances) {
+			Shape current = template.getShape();
+			check(current.types, instances);
+
+			if (current != shape || this.instances.length != instances.length) {
+				this.invocations = null;
+				this.instances = new Object[instances.length];
+			}
+
+			clear();
+			System.arraycopy(instances, 0, this.instances, 0, instances.length);
+			this.shape = current;
+			this.bound = true;
+		}
+
+		@Override
+		public void reset() {
+			clear();
+			Arrays.fill(instances, null);
+			bound = false;
+		}
+
+		@Override
+		public boolean isBound() {
+			return bound;
+		}
+
+		private void clear() {
+			Invocation[] current = invocations;
+			if (current != null) {
+				Arrays.fill(current, null);
+			}
+
+			mixin = null;
+		}
+
+		private Invocation getInvocation(Shape shape, int ordinal, Object target) {
+			Invocation[] current = invocations;
+			if (current == null) {
+				current = new Invocation[shape.invocations.length];
+				invocations = current;
+			}
+
+			Invocation invocation = current[ordinal];
+			if (invocation == null) {
+				Invocation template = shape.invocations[ordinal];
+				invocation = template.getBinding().bind(target, template.getAround(), template.getCurryPlan());
+				current[ordinal] = invocation;
+			}
+
+			return invocation;
+		}
+
+		private Mixin getMixin(Shape shape) {
+			if (!bound) {
+				throw new IllegalStateException("The instance was reset. Cannot invoke methods until it is rebound.");
+			}
+
+			Mixin current = mixin;
+			if (current == null) {
+				current = shape.snapshot.bind(instances.clone());
+				mixin = current;
+			}
+
+			return current;
+		}
+	}
+
+	private final Class<T> kind;
+	private final Mixin mixin;
+	private final List<Class<?>> types;
+	private volatile Shape shape;
+
+	/**
+	 * Creates a template, without classes, for the given interface.
+	 *
+	 * @param kind
+	 *            The interface implemented by the bound instances.
+	 */
+	public MixinTemplate(Class<T> kind) {
+		if (kind == null || !kind.isInterface()) {
+			String message = String.format("An interface must be used. Cannot create a template for \"%s\".", kind == null ? null : kind.getName());
+			throw new IllegalArgumentException(message);
+		}
+
+		this.kind = kind;
+		this.mixin = new Mixin();
+		this.types = new ArrayList<Class<?>>();
+	}
+
+	/**
+	 * @return The interface implemented by the bound instances.
+	 */
+	public Class<T> getKind() {
+		return kind;
+	}
+
+	/**
+	 * Mixes the instances of a given class. The class, or interface, is used
+	 * to resolve the methods and each bound instance must be an instance of
+	 * the class.
+	 *
+	 * @param type
+	 *            The class of the instances.
+	 * @return A {@link Mixed} abstraction that allows to fine tune the use of
+	 *         the instances.
+	 * @see Mixin#mix(Object)
+	 */
+	public Mixed mix(Class<?> type) {
+		if (type == null) {
+			String message = String.format("Tried to mix null. Cannot use null as an implementation class.");
+			throw new IllegalArgumentException(message);
+		}
+
+		Mixed mixed = mixin.mixType(type);
+		types.add(type);
+		return mixed;
+	}
+
+	/**
+	 * Puts the invocations of all methods under a {@link DuckWing} handler.
+	 *
+	 * @param handler
+	 *            The handler to apply to every invocation.
+	 * @return The same template to allow fluid configuration.
+	 * @see Mixin#around(DuckWing)
+	 */
+	public MixinTemplate<T> around(DuckWing handler) {
+		mixin.around(handler);
+		return this;
+	}
+
+	/**
+	 * Creates an instance of the interface backed by the given instances. The
+	 * created instance also implements {@link Rebindable} so that it can be
+	 * reused with other instances.
+	 *
+	 * @param instances
+	 *            One instance for each mixed class, in order. The array is
+	 *            copied.
+	 * @return The instance of the interface or <code>null</code> if no class
+	 *         was mixed.
+	 * @throws IllegalArgumentException
+	 *             If the instances do not match the mixed classes.
+	 */
+	public T bind(Object... instances) {
+		check(types, instances);
+		if (instances.length == 0) {
+			return null;
+		}
+
+		Shape current = getShape();
+		try {
+			return kind.cast(current.constructor.newInstance(new BoundHandler(this, current, instances.clone())));
+		} catch (ReflectiveOperationException e) {
+			String message = String.format("Failed to instantiate the proxy class for %s.", kind.getName());
+			throw new IllegalStateException(message, e);
+		}
+	}
+
+	/**
+	 * Verifies if an instance was created by this template.
+	 *
+	 * @param instance
+	 *            Any instance.
+	 * @return <code>true</code> if the instance was returned by
+	 *         {@link #bind(Object...)}.
+	 */
+	public boolean isTemplateOf(Object instance) {
+		return getRebindable(instance) != null;
+	}
+
+	/**
+	 * Obtains the {@link Rebindable} implementation of an instance created by
+	 * this template. Calls to the returned object do not go through the
+	 * methods of the instance and are cheaper than casting the instance.
+	 *
+	 * @param instance
+	 *            Any instance.
+	 * @return The implementation or <code>null</code> if the instance was not
+	 *         created by this template.
+	 */
+	public Rebindable getRebindable(Object instance) {
+		if (instance == null || !Proxy.isProxyClass(instance.getClass())) {
+			return null;
+		}
+
+		InvocationHandler handler = Proxy.getInvocationHandler(instance);
+		if (handler instanceof BoundHandler && ((BoundHandler) handler).template == this) {
+			return (BoundHandler) handler;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Obtains the resolution of the current configuration, resolving again
+	 * only after changes.
+	 */
+	private Shape getShape() {
+		Shape current = shape;
+		if (current == null || current.version != mixin.getVersion()) {
+			current = new Shape(kind, mixin, types);
+			shape = current;
+		}
+
+		return current;
+	}
+
+	private static void check(List<Class<?>> types, Object[] instances) {
+		if (instances == null || instances.length != types.size()) {
+			String message = String.format("Expected %d instances. Cannot bind %s.", types.size(), instances == null ? null : instances.length);
+			throw new IllegalArgumentException(message);
+		}
+
+		for (int i = 0; i < instances.length; i++) {
+			if (!types.get(i).isInstance(instances[i])) {
+				String message = String.format("Expected an instance of %s. Cannot bind %s.", types.get(i).getName(), instances[i]);
+				throw new IllegalArgumentException(message);
+			}
+		}
+	}
+
+}
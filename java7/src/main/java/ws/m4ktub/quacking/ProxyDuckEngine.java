@@ -0,0 +1,134 @@
+package ws.m4ktub.quacking;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Creates duck instances as dynamic proxies that delegate every call to the
+ * mixin's invocation handler.
+ *
+ * <p>
+ * The constructor of each proxy class is kept in a registry, by class loader
+ * and set of interfaces, so that creating an instance does not need to look up
+ * the proxy class again. The registry is attached to a class defined by the
+ * same class loader as the proxy class and is released together with that
+ * class loader.
+ *
+ * @author m4ktub
+ */
+class ProxyDuckEngine implements DuckEngine {
+
+	/**
+	 * Handles the instance created only to find the proxy class.
+	 */
+	private static final InvocationHandler UNUSED = new InvocationHandler() {
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			throw new UnsupportedOperationException();
+		}
+	};
+
+	private static final ClassValue<ConcurrentMap<List<Class<?>>, Constructor<?>>> constructors = new ClassValue<ConcurrentMap<List<Class<?>>, Constructor<?>>>() {
+		@Override
+		protected ConcurrentMap<List<Class<?>>, Constructor<?>> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<List<Class<?>>, Constructor<?>>();
+		}
+	};
+
+	@Override
+	public Object create(Mixin mixin, ClassLoader classLoader, Class<?>... kinds) {
+		// create proxy ensuring kinds and DuckType classes
+		Class<?>[] interfaces = new Class<?>[kinds.length + 1];
+		interfaces[0] = DuckType.class;
+		System.arraycopy(kinds, 0, interfaces, 1, kinds.length);
+
+		InvocationHandler handler = mixin.getInvocationHandler(kinds);
+		Class<?> anchor = getAnchor(classLoader, interfaces, mixin.getClass());
+		if (anchor == null) {
+			return Proxy.newProxyInstance(classLoader, interfaces, handler);
+		}
+
+		try {
+			return getConstructor(anchor, classLoader, interfaces).newInstance(handler);
+		} catch (ReflectiveOperationException e) {
+			String message = String.format("Failed to instantiate the proxy class for %s.", Arrays.toString(kinds));
+			throw new IllegalStateException(message, e);
+		}
+	}
+
+	/**
+	 * Finds a class defined by the class loader where the registry of its
+	 * proxy classes can be kept.
+	 */
+	private static Class<?> getAnchor(ClassLoader classLoader, Class<?>[] interfaces, Class<?> mixinClass) {
+		for (Class<?> candidate : interfaces) {
+			if (candidate.getClassLoader() == classLoader) {
+				return candidate;
+			}
+		}
+
+		return mixinClass.getClassLoader() == classLoader ? mixinClass : null;
+	}
+
+	/**
+	 * Obtains the constructor of the proxy class for the given interfaces,
+	 * defining the class on first use.
+	 *
+	 * @param anchor
+	 *            A class defined by the class loader.
+	 * @param classLoader
+	 *            The class loader where the proxy class is defined.
+	 * @param interfaces
+	 *            The interfaces implemented by the proxy class.
+	 * @return The constructor that receives the invocation handler.
+	 */
+	static Constructor<?> getConstructor(Class<?> anchor, ClassLoader classLoader, Class<?>[] interfaces) {
+		ConcurrentMap<List<Class<?>>, Constructor<?>> registry = constructors.get(anchor);
+		List<Class<?>> key = Arrays.<Class<?>> asList(interfaces.clone());
+
+		Constructor<?> constructor = registry.get(key);
+		if (constructor == null) {
+			constructor = createConstructor(classLoader, interfaces);
+
+			Constructor<?> existing = registry.putIfAbsent(key, constructor);
+			constructor = existing != null ? existing : constructor;
+		}
+
+		return constructor;
+	}
+
+	/**
+	 * Obtains the constructor of the proxy class for the given interfaces
+	 * without keeping it in the registry.
+	 *
+	 * @param classLoader
+	 *            The class loader where the proxy class is defined.
+	 * @param interfaces
+	 *            The interfaces implemented by the proxy class.
+	 * @return The constructor that receives the invocation handler.
+	 */
+	static Constructor<?> createConstructor(ClassLoader classLoader, Class<?>[] interfaces) {
+		try {
+			// getProxyClass is deprecated so the class is taken from an instance
+			Class<?> proxyClass = Proxy.newProxyInstance(classLoader, interfaces, UNUSED).getClass();
+			Constructor<?> constructor = proxyClass.getConstructor(InvocationHandler.class);
+
+			// proxies of non public interfaces are not public
+			if (!Modifier.isPublic(proxyClass.getModifiers())) {
+				constructor.setAccessible(true);
+			}
+
+			return constructor;
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
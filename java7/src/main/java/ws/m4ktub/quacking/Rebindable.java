@@ -0,0 +1,53 @@
+package ws.m4ktub.quacking;
+
+/**
+ * A <tt>Rebindable</tt> is an instance of an interface, created by a
+ * {@link MixinTemplate}, whose mixed instances can be replaced. The methods
+ * remain resolved and only the instances that receive the calls change, so
+ * the same instance can be reused for many sets of instances.
+ *
+ * <pre>
+ * HttpServletRequest mixedRequest = template.bind(new ForceCharacterEncoding(&quot;UTF-8&quot;), getRequest());
+ * ...
+ * ((Rebindable) mixedRequest).reset();
+ * ...
+ * ((Rebindable) mixedRequest).rebind(new ForceCharacterEncoding(&quot;UTF-8&quot;), getNextRequest());
+ * </pre>
+ *
+ * <p>
+ * Rebinding is not synchronized with calls made in other threads so an
+ * instance must only be rebound when it is no longer in use. An instance
+ * that was reset does not keep any reference to the previous instances, and
+ * fails any call until it is rebound.
+ * </p>
+ *
+ * @author m4ktub
+ * @see ws.m4ktub.quacking.utils.MixinPool
+ */
+public interface Rebindable {
+
+	/**
+	 * Replaces the mixed instances. If the template was changed, the methods
+	 * are resolved again according to the current configuration.
+	 *
+	 * @param instances
+	 *            One instance for each class mixed in the template, in order.
+	 *            The array is copied.
+	 * @throws IllegalArgumentException
+	 *             If the instances do not match the mixed classes.
+	 */
+	void rebind(Object... instances);
+
+	/**
+	 * Releases the mixed instances, and any state created for them, until the
+	 * next {@link #rebind(Object...)}.
+	 */
+	void reset();
+
+	/**
+	 * @return <code>true</code> if the instance has mixed instances and was
+	 *         not reset.
+	 */
+	boolean isBound();
+
+}
@@ -0,0 +1,117 @@
+package ws.m4ktub.quacking;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+
+/**
+ * An invocation of a method on an instance that is mixed weakly. The
+ * instance is obtained on each call, and passed to the shared method handle,
+ * so that the invocation never keeps it alive. The wings and curried
+ * constants are composed once into a call path that receives the instance as
+ * first argument.
+ * 
+ * <p>
+ * If the instance was collected the invocation fails with a
+ * {@link CollectedException} that makes the mixin remove the instance and
+ * resolve the call again.
+ * 
+ * @author m4ktub
+ * @see Mixin#mixWeak(Object)
+ */
+class WeakInvocation extends Invocation {
+
+	/**
+	 * Signals that the target of an invocation was collected. The exception
+	 * is shared and has no stack trace since it is handled by the mixin.
+	 */
+	static final class CollectedException extends IllegalStateException {
+
+		private static final long serialVersionUID = 1L;
+
+		static final CollectedException INSTANCE = new CollectedException();
+
+		private CollectedException() {
+			super("The weakly mixed instance was collected.");
+		}
+
+		@Override
+		public synchronized Throwable fillInStackTrace() {
+			return this;
+		}
+
+	}
+
+	private static final DuckWing DEFAULT = new DuckWing.Default();
+
+	private final Mixed mixed;
+	private final MethodHandle path;
+
+	public WeakInvocation(Mixed mixed, DuckWing around, MethodBinding binding, CurryPlan curryPlan) {
+		super(around, binding, curryPlan);
+		this.mixed = mixed;
+		this.path = getPath(around, binding, curryPlan);
+	}
+
+	/**
+	 * Builds the handle that receives the target and the arguments, as given
+	 * to {@link #proceeed(Object[])}, and calls the wings or the method.
+	 */
+	private static MethodHandle getPath(DuckWing around, MethodBinding binding, CurryPlan curryPlan) {
+		Method method = binding.getMethod();
+		MethodHandle handle = binding.getHandle();
+
+		MethodHandle fixedHandle = null;
+		if (handle != null && needsFixedHandle(around, curryPlan, method)) {
+			fixedHandle = binding.getFixedHandle();
+		}
+
+		if (around != null) {
+			return DuckWingStack.composeUnbound(around, method, handle, fixedHandle);
+		}
+
+		if (curryPlan != null && fixedHandle != null) {
+			return curryPlan.bind(fixedHandle, 1);
+		}
+
+		return null;
+	}
+
+	@Override
+	public Object getTarget() {
+		return mixed.getInstance();
+	}
+
+	@Override
+	public MethodHandle getHandle() {
+		Object target = mixed.getInstance();
+		MethodHandle handle = getBinding().getHandle();
+		return target == null || handle == null ? null : handle.bindTo(target);
+	}
+
+	@Override
+	public Object proceeed(Object[] args) throws Throwable {
+		Object target = mixed.getInstance();
+		if (target == null) {
+			throw CollectedException.INSTANCE;
+		}
+
+		if (path != null && getAround() == null) {
+			// constants are already in the path
+			return (Object) path.invokeExact(target, args);
+		}
+
+		Object[] finalArgs = getFinalArgs(args);
+
+		if (path != null) {
+			return (Object) path.invokeExact(target, finalArgs);
+		}
+
+		MethodHandle handle = getBinding().getHandle();
+		if (handle == null) {
+			return DEFAULT.wrap(target, getMethod(), finalArgs);
+		}
+
+		return (Object) handle.invokeExact(target, finalArgs);
+	}
+
+}
@@ -0,0 +1,698 @@
+package ws.m4ktub.quacking.helpers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A minimal writer of class files. It supports only what is needed to generate
+ * simple delegating classes: fields, methods, and straight-line code without
+ * branches or exception handlers. Because there are no branches no stack map
+ * frames have to be computed and the produced classes are valid for the Java 7
+ * verifier.
+ *
+ * <p>
+ * All classes referenced by the generated code are recorded and can be
+ * obtained with {@link #getReferencedClasses()}. This allows the class to be
+ * defined in a class loader that resolves exactly those classes.
+ *
+ * @author m4ktub
+ */
+public final class ClassAssembler {
+
+	public static final int ACC_PUBLIC = 0x0001;
+	public static final int ACC_PRIVATE = 0x0002;
+	public static final int ACC_STATIC = 0x0008;
+	public static final int ACC_FINAL = 0x0010;
+	public static final int ACC_SUPER = 0x0020;
+
+	private static final int VERSION_JAVA7 = 51;
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_INTERFACE_METHODREF = 11;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	private final String internalName;
+	private final int superClass;
+	private final int[] interfaces;
+
+	private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+	private final DataOutputStream poolOut = new DataOutputStream(pool);
+	private final Map<String, Integer> poolIndexes = new HashMap<String, Integer>();
+	private int poolCount = 1;
+
+	private final List<byte[]> fields = new ArrayList<byte[]>();
+	private final List<Code> methods = new ArrayList<Code>();
+	private final Set<Class<?>> referencedClasses = new LinkedHashSet<Class<?>>();
+
+	/**
+	 * Starts a new public and final class.
+	 *
+	 * @param name
+	 *            The binary name of the class being generated.
+	 * @param superClass
+	 *            The super class.
+	 * @param interfaces
+	 *            The implemented interfaces.
+	 */
+	public ClassAssembler(String name, Class<?> superClass, Class<?>... interfaces) {
+		this.internalName = name.replace('.', '/');
+		this.superClass = classConstant(superClass);
+		this.interfaces = new int[interfaces.length];
+		for (int i = 0; i < interfaces.length; i++) {
+			this.interfaces[i] = classConstant(interfaces[i]);
+		}
+	}
+
+	/**
+	 * @return The binary name of the class being generated.
+	 */
+	public String getName() {
+		return internalName.replace('/', '.');
+	}
+
+	/**
+	 * @return All the classes that are referenced by the generated class,
+	 *         excluding primitive and array types, that will need to be
+	 *         resolved by the defining class loader.
+	 */
+	public Set<Class<?>> getReferencedClasses() {
+		return referencedClasses;
+	}
+
+	/**
+	 * Adds a field to the class.
+	 *
+	 * @param access
+	 *            The access flags.
+	 * @param name
+	 *            The name of the field.
+	 * @param type
+	 *            The type of the field.
+	 */
+	public void field(int access, String name, Class<?> type) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		try {
+			out.writeShort(access);
+			out.writeShort(utf8(name));
+			out.writeShort(utf8(descriptorOf(type)));
+			out.writeShort(0);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		fields.add(bytes.toByteArray());
+	}
+
+	/**
+	 * Adds a method to the class and returns the code builder for its body.
+	 *
+	 * @param access
+	 *            The access flags.
+	 * @param name
+	 *            The name of the method.
+	 * @param returnType
+	 *            The return type.
+	 * @param parameterTypes
+	 *            The parameter types.
+	 * @return The builder for the method's code.
+	 */
+	public Code method(int access, String name, Class<?> returnType, Class<?>... parameterTypes) {
+		int locals = (access & ACC_STATIC) == 0 ? 1 : 0;
+		for (Class<?> type : parameterTypes) {
+			locals += size(type);
+		}
+
+		Code code = new Code(access, utf8(name), utf8(descriptorOf(returnType, parameterTypes)), locals);
+		methods.add(code);
+		return code;
+	}
+
+	/**
+	 * @return The bytes of the class file.
+	 */
+	public byte[] toByteArray() {
+		int thisClass = classConstant(internalName);
+		int codeAttribute = utf8("Code");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		try {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(VERSION_JAVA7);
+			out.writeShort(poolCount);
+			pool.writeTo(out);
+
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(interfaces.length);
+			for (int i = 0; i < interfaces.length; i++) {
+				out.writeShort(interfaces[i]);
+			}
+
+			out.writeShort(fields.size());
+			for (byte[] field : fields) {
+				out.write(field);
+			}
+
+			out.writeShort(methods.size());
+			for (Code method : methods) {
+				method.writeTo(out, codeAttribute);
+			}
+
+			out.writeShort(0);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Obtains the internal name of a class, as used in class constants.
+	 *
+	 * @param type
+	 *            A reference type.
+	 * @return The internal name or the descriptor for arrays.
+	 */
+	public static String internalName(Class<?> type) {
+		if (type.isArray()) {
+			return descriptor(type);
+		}
+
+		return type.getName().replace('.', '/');
+	}
+
+	/**
+	 * Obtains the descriptor of a type.
+	 *
+	 * @param type
+	 *            Any type, including primitive and array types.
+	 * @return The type descriptor.
+	 */
+	public static String descriptor(Class<?> type) {
+		if (type.isArray()) {
+			return "[" + descriptor(type.getComponentType());
+		}
+
+		if (type.isPrimitive()) {
+			if (type == Integer.TYPE) {
+				return "I";
+			} else if (type == Long.TYPE) {
+				return "J";
+			} else if (type == Boolean.TYPE) {
+				return "Z";
+			} else if (type == Byte.TYPE) {
+				return "B";
+			} else if (type == Character.TYPE) {
+				return "C";
+			} else if (type == Short.TYPE) {
+				return "S";
+			} else if (type == Float.TYPE) {
+				return "F";
+			} else if (type == Double.TYPE) {
+				return "D";
+			} else {
+				return "V";
+			}
+		}
+
+		return "L" + internalName(type) + ";";
+	}
+
+	/**
+	 * Obtains the descriptor of a method.
+	 *
+	 * @param returnType
+	 *            The return type.
+	 * @param parameterTypes
+	 *            The parameter types.
+	 * @return The method descriptor.
+	 */
+	public static String descriptor(Class<?> returnType, Class<?>... parameterTypes) {
+		StringBuilder builder = new StringBuilder("(");
+		for (Class<?> type : parameterTypes) {
+			builder.append(descriptor(type));
+		}
+
+		return builder.append(')').append(descriptor(returnType)).toString();
+	}
+
+	/**
+	 * @param type
+	 *            Any type.
+	 * @return The number of local variable or stack slots used by a value of
+	 *         the given type.
+	 */
+	public static int size(Class<?> type) {
+		if (type == Void.TYPE) {
+			return 0;
+		}
+
+		return type == Long.TYPE || type == Double.TYPE ? 2 : 1;
+	}
+
+	private void reference(Class<?> type) {
+		while (type.isArray()) {
+			type = type.getComponentType();
+		}
+
+		if (!type.isPrimitive()) {
+			referencedClasses.add(type);
+		}
+	}
+
+	private String descriptorOf(Class<?> type) {
+		reference(type);
+		return descriptor(type);
+	}
+
+	private String descriptorOf(Class<?> returnType, Class<?>... parameterTypes) {
+		reference(returnType);
+		for (Class<?> type : parameterTypes) {
+			reference(type);
+		}
+
+		return descriptor(returnType, parameterTypes);
+	}
+
+	private int constant(String key, int tag, int first, int second) {
+		Integer index = poolIndexes.get(key);
+		if (index != null) {
+			return index;
+		}
+
+		try {
+			poolOut.writeByte(tag);
+			poolOut.writeShort(first);
+			if (second >= 0) {
+				poolOut.writeShort(second);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		poolIndexes.put(key, poolCount);
+		return poolCount++;
+	}
+
+	private int utf8(String value) {
+		String key = "U" + value;
+		Integer index = poolIndexes.get(key);
+		if (index != null) {
+			return index;
+		}
+
+		try {
+			poolOut.writeByte(CONSTANT_UTF8);
+			poolOut.writeUTF(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		poolIndexes.put(key, poolCount);
+		return poolCount++;
+	}
+
+	private int integer(int value) {
+		String key = "I" + value;
+		Integer index = poolIndexes.get(key);
+		if (index != null) {
+			return index;
+		}
+
+		try {
+			poolOut.writeByte(CONSTANT_INTEGER);
+			poolOut.writeInt(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		poolIndexes.put(key, poolCount);
+		return poolCount++;
+	}
+
+	private int classConstant(String internal) {
+		return constant("C" + internal, CONSTANT_CLASS, utf8(internal), -1);
+	}
+
+	private int classConstant(Class<?> type) {
+		reference(type);
+		return classConstant(internalName(type));
+	}
+
+	private int string(String value) {
+		return constant("S" + value, CONSTANT_STRING, utf8(value), -1);
+	}
+
+	private int nameAndType(String name, String descriptor) {
+		return constant("N" + name + ":" + descriptor, CONSTANT_NAME_AND_TYPE, utf8(name), utf8(descriptor));
+	}
+
+	private int member(int tag, int owner, String name, String descriptor) {
+		return constant(tag + ":" + owner + "." + name + ":" + descriptor, tag, owner, nameAndType(name, descriptor));
+	}
+
+	/**
+	 * A builder for the straight-line code of a method. The maximum stack size
+	 * is tracked as instructions are added.
+	 *
+	 * @author m4ktub
+	 */
+	public final class Code {
+
+		private final int access;
+		private final int name;
+		private final int descriptor;
+		private final int maxLocals;
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private int stack;
+		private int maxStack;
+
+		private Code(int access, int name, int descriptor, int maxLocals) {
+			this.access = access;
+			this.name = name;
+			this.descriptor = descriptor;
+			this.maxLocals = maxLocals;
+		}
+
+		private void op(int opcode, int stackChange) {
+			bytes.write(opcode);
+			stack(stackChange);
+		}
+
+		private void stack(int stackChange) {
+			stack += stackChange;
+			maxStack = Math.max(maxStack, stack);
+		}
+
+		private void u1(int value) {
+			bytes.write(value);
+		}
+
+		private void u2(int value) {
+			bytes.write(value >>> 8);
+			bytes.write(value);
+		}
+
+		/**
+		 * Loads a local variable of the given type into the stack.
+		 */
+		public Code load(Class<?> type, int slot) {
+			int opcode;
+			if (!type.isPrimitive()) {
+				opcode = 0x19; // aload
+			} else if (type == Long.TYPE) {
+				opcode = 0x16; // lload
+			} else if (type == Float.TYPE) {
+				opcode = 0x17; // fload
+			} else if (type == Double.TYPE) {
+				opcode = 0x18; // dload
+			} else {
+				opcode = 0x15; // iload
+			}
+
+			op(opcode, size(type));
+			u1(slot);
+			return this;
+		}
+
+		/**
+		 * Loads <tt>this</tt> into the stack.
+		 */
+		public Code loadThis() {
+			op(0x2A, 1); // aload_0
+			return this;
+		}
+
+		/**
+		 * Pushes an integer constant into the stack.
+		 */
+		public Code push(int value) {
+			if (value >= -1 && value <= 5) {
+				op(0x03 + value, 1); // iconst_<n>
+			} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+				op(0x10, 1); // bipush
+				u1(value);
+			} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+				op(0x11, 1); // sipush
+				u2(value);
+			} else {
+				op(0x12, 1); // ldc
+				u1(integer(value));
+			}
+
+			return this;
+		}
+
+		/**
+		 * Pushes a string constant into the stack.
+		 */
+		public Code push(String value) {
+			int index = string(value);
+			if (index < 256) {
+				op(0x12, 1); // ldc
+				u1(index);
+			} else {
+				op(0x13, 1); // ldc_w
+				u2(index);
+			}
+
+			return this;
+		}
+
+		/**
+		 * Pushes <code>null</code> into the stack.
+		 */
+		public Code pushNull() {
+			op(0x01, 1); // aconst_null
+			return this;
+		}
+
+		/**
+		 * Duplicates the value on top of the stack.
+		 */
+		public Code dup() {
+			op(0x59, 1); // dup
+			return this;
+		}
+
+		/**
+		 * Discards the value of the given type on top of the stack.
+		 */
+		public Code pop(Class<?> type) {
+			if (type == Void.TYPE) {
+				return this;
+			}
+
+			if (size(type) == 2) {
+				op(0x58, -2); // pop2
+			} else {
+				op(0x57, -1); // pop
+			}
+
+			return this;
+		}
+
+		/**
+		 * Creates a new array of the given reference component type using the
+		 * length on top of the stack.
+		 */
+		public Code newArray(Class<?> componentType) {
+			op(0xBD, 0); // anewarray
+			u2(classConstant(componentType));
+			return this;
+		}
+
+		/**
+		 * Stores a reference in an array. Expects the array, the index, and
+		 * the value in the stack.
+		 */
+		public Code arrayStore() {
+			op(0x53, -3); // aastore
+			return this;
+		}
+
+		/**
+		 * Loads a reference from an array. Expects the array and the index in
+		 * the stack.
+		 */
+		public Code arrayLoad() {
+			op(0x32, -1); // aaload
+			return this;
+		}
+
+		/**
+		 * Checks that the reference on top of the stack is of the given type.
+		 */
+		public Code checkCast(Class<?> type) {
+			op(0xC0, 0); // checkcast
+			u2(classConstant(type));
+			return this;
+		}
+
+		/**
+		 * Reads a field of the class being generated.
+		 */
+		public Code getField(String field, Class<?> type) {
+			op(0xB4, size(type) - 1); // getfield
+			u2(member(CONSTANT_FIELDREF, classConstant(internalName), field, descriptorOf(type)));
+			return this;
+		}
+
+		/**
+		 * Writes a field of the class being generated.
+		 */
+		public Code putField(String field, Class<?> type) {
+			op(0xB5, -size(type) - 1); // putfield
+			u2(member(CONSTANT_FIELDREF, classConstant(internalName), field, descriptorOf(type)));
+			return this;
+		}
+
+		/**
+		 * Reads a static field of the class being generated.
+		 */
+		public Code getStatic(String field, Class<?> type) {
+			op(0xB2, size(type)); // getstatic
+			u2(member(CONSTANT_FIELDREF, classConstant(internalName), field, descriptorOf(type)));
+			return this;
+		}
+
+		/**
+		 * Invokes a method through the given owner class. The opcode is
+		 * selected based on the owner being an interface or the method being
+		 * static.
+		 */
+		public Code invoke(Class<?> owner, Method method) {
+			Class<?>[] parameterTypes = method.getParameterTypes();
+			String methodDescriptor = descriptorOf(method.getReturnType(), parameterTypes);
+
+			int argumentsSize = 0;
+			for (Class<?> type : parameterTypes) {
+				argumentsSize += size(type);
+			}
+
+			int returnSize = size(method.getReturnType());
+			if (Modifier.isStatic(method.getModifiers())) {
+				op(0xB8, returnSize - argumentsSize); // invokestatic
+				u2(member(owner.isInterface() ? CONSTANT_INTERFACE_METHODREF : CONSTANT_METHODREF, classConstant(owner), method.getName(), methodDescriptor));
+			} else if (owner.isInterface()) {
+				op(0xB9, returnSize - argumentsSize - 1); // invokeinterface
+				u2(member(CONSTANT_INTERFACE_METHODREF, classConstant(owner), method.getName(), methodDescriptor));
+				u1(argumentsSize + 1);
+				u1(0);
+			} else {
+				op(0xB6, returnSize - argumentsSize - 1); // invokevirtual
+				u2(member(CONSTANT_METHODREF, classConstant(owner), method.getName(), methodDescriptor));
+			}
+
+			return this;
+		}
+
+		/**
+		 * Invokes a constructor of the given class without creating the
+		 * instance. Used to call super constructors.
+		 */
+		public Code invokeConstructor(Constructor<?> constructor) {
+			Class<?>[] parameterTypes = constructor.getParameterTypes();
+
+			int argumentsSize = 0;
+			for (Class<?> type : parameterTypes) {
+				argumentsSize += size(type);
+			}
+
+			op(0xB7, -argumentsSize - 1); // invokespecial
+			u2(member(CONSTANT_METHODREF, classConstant(constructor.getDeclaringClass()), "<init>", descriptorOf(Void.TYPE, parameterTypes)));
+			return this;
+		}
+
+		/**
+		 * Converts the primitive value on top of the stack into its wrapper.
+		 */
+		public Code box(Class<?> primitive) {
+			Class<?> wrapper = Reflections.getWrapperType(primitive);
+			try {
+				return invoke(wrapper, wrapper.getMethod("valueOf", primitive));
+			} catch (NoSuchMethodException e) {
+				throw new IllegalArgumentException("Cannot box " + primitive, e);
+			}
+		}
+
+		/**
+		 * Converts the wrapper reference on top of the stack into the given
+		 * primitive value. A <code>null</code> reference results in a
+		 * {@link NullPointerException}.
+		 */
+		public Code unbox(Class<?> primitive) {
+			Class<?> wrapper = Reflections.getWrapperType(primitive);
+			checkCast(wrapper);
+			try {
+				return invoke(wrapper, wrapper.getMethod(primitive.getName() + "Value"));
+			} catch (NoSuchMethodException e) {
+				throw new IllegalArgumentException("Cannot unbox " + primitive, e);
+			}
+		}
+
+		/**
+		 * Returns the value of the given type on top of the stack.
+		 */
+		public void returnValue(Class<?> type) {
+			int opcode;
+			if (type == Void.TYPE) {
+				opcode = 0xB1; // return
+			} else if (!type.isPrimitive()) {
+				opcode = 0xB0; // areturn
+			} else if (type == Long.TYPE) {
+				opcode = 0xAD; // lreturn
+			} else if (type == Float.TYPE) {
+				opcode = 0xAE; // freturn
+			} else if (type == Double.TYPE) {
+				opcode = 0xAF; // dreturn
+			} else {
+				opcode = 0xAC; // ireturn
+			}
+
+			op(opcode, -size(type));
+		}
+
+		private void writeTo(DataOutputStream out, int codeAttribute) throws IOException {
+			byte[] code = bytes.toByteArray();
+
+			out.writeShort(access);
+			out.writeShort(name);
+			out.writeShort(descriptor);
+			out.writeShort(1);
+
+			out.writeShort(codeAttribute);
+			out.writeInt(12 + code.length);
+			out.writeShort(maxStack);
+			out.writeShort(maxLocals);
+			out.writeInt(code.length);
+			out.write(code);
+			out.writeShort(0);
+			out.writeShort(0);
+		}
+
+	}
+
+}
@@ -0,0 +1,339 @@
+package ws.m4ktub.quacking.helpers;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An index of the public methods of a class. The index is built once for each
+ * class and groups the methods by name and number of parameters. The
+ * parameter and return types of each method are extracted only once so that
+ * method resolution does not need to query, and copy, the reflection data
+ * repeatedly.
+ *
+ * <p>
+ * The index is attached to the class itself and does not prevent the class
+ * from being unloaded.
+ *
+ * @author m4ktub
+ */
+public final class ClassMetadata {
+
+	private static final ClassValue<ClassMetadata> index = new ClassValue<ClassMetadata>() {
+		@Override
+		protected ClassMetadata computeValue(Class<?> type) {
+			return new ClassMetadata(type);
+		}
+	};
+
+	/**
+	 * The reflection data of a public method. The arrays returned by this
+	 * class are shared and must not be modified.
+	 */
+	public static final class MethodInfo {
+		private final Method method;
+		private final String name;
+		private final Class<?>[] parameterTypes;
+		private final Type[] genericParameterTypes;
+		private final Class<?> returnType;
+		private final Type genericReturnType;
+		private final int modifiers;
+		private final boolean accessible;
+		private boolean exactDispatch;
+		private volatile Type[] dispatchTypes;
+
+		private MethodInfo(Method method) {
+			this.method = method;
+			this.name = method.getName();
+			this.parameterTypes = method.getParameterTypes();
+			this.genericParameterTypes = method.getGenericParameterTypes();
+			this.returnType = method.getReturnType();
+			this.genericReturnType = method.getGenericReturnType();
+			this.modifiers = method.getModifiers();
+			this.accessible = Modifier.isPublic(modifiers) && Modifier.isPublic(method.getDeclaringClass().getModifiers());
+		}
+
+		public Method getMethod() {
+			return method;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getArity() {
+			return parameterTypes.length;
+		}
+
+		public Class<?>[] getParameterTypes() {
+			return parameterTypes;
+		}
+
+		public Type[] getGenericParameterTypes() {
+			return genericParameterTypes;
+		}
+
+		public Class<?> getReturnType() {
+			return returnType;
+		}
+
+		public Type getGenericReturnType() {
+			return genericReturnType;
+		}
+
+		/**
+		 * Obtains the types that resolve the method when the arguments are
+		 * not inspected. Primitive parameters are represented by their
+		 * wrapper types, which is the type of any argument passed to them.
+		 * The types are computed once.
+		 *
+		 * @return The static dispatch types of the parameters.
+		 * @see #isExactDispatch()
+		 */
+		public Type[] getDispatchTypes() {
+			Type[] types = dispatchTypes;
+			if (types == null) {
+				boolean exact = true;
+				types = new Type[genericParameterTypes.length];
+				for (int i = 0; i < types.length; i++) {
+					Type type = genericParameterTypes[i];
+					exact = exact && Reflections.isExactType(type);
+					types[i] = Reflections.isPrimitive(type) ? Reflections.getWrapperType((Class<?>) type) : type;
+				}
+
+				// published by the volatile write
+				exactDispatch = exact;
+				dispatchTypes = types;
+			}
+
+			return types;
+		}
+
+		/**
+		 * @return <code>true</code> if no argument can have a type more
+		 *         specific than the declared parameter type, because all
+		 *         parameters are primitive types or final classes.
+		 */
+		public boolean isExactDispatch() {
+			getDispatchTypes();
+			return exactDispatch;
+		}
+
+		public boolean isStatic() {
+			return Modifier.isStatic(modifiers);
+		}
+
+		public boolean isBridge() {
+			return method.isBridge();
+		}
+
+		/**
+		 * @return <code>true</code> if the method and its declaring class are
+		 *         public, meaning the method can be called from anywhere.
+		 */
+		public boolean isAccessible() {
+			return accessible;
+		}
+	}
+
+	private static final List<MethodInfo> NONE = Collections.emptyList();
+
+	private final Class<?> type;
+	private final List<MethodInfo> methods;
+	private final Map<String, List<MethodInfo>> methodsByName;
+	private final Map<String, List<List<MethodInfo>>> methodsByArity;
+	private final ConcurrentMap<String, MultiDispatcher[]> dispatchers;
+
+	private ClassMetadata(Class<?> type) {
+		Method[] publicMethods = type.getMethods();
+		MethodInfo[] infos = new MethodInfo[publicMethods.length];
+
+		Map<String, List<MethodInfo>> byName = new HashMap<String, List<MethodInfo>>();
+		for (int i = 0; i < publicMethods.length; i++) {
+			infos[i] = new MethodInfo(publicMethods[i]);
+
+			List<MethodInfo> named = byName.get(infos[i].name);
+			if (named == null) {
+				named = new ArrayList<MethodInfo>();
+				byName.put(infos[i].name, named);
+			}
+
+			named.add(infos[i]);
+		}
+
+		this.type = type;
+		this.methods = Collections.unmodifiableList(Arrays.asList(infos));
+		this.methodsByName = new HashMap<String, List<MethodInfo>>();
+		this.methodsByArity = new HashMap<String, List<List<MethodInfo>>>();
+		this.dispatchers = new ConcurrentHashMap<String, MultiDispatcher[]>();
+
+		for (Map.Entry<String, List<MethodInfo>> entry : byName.entrySet()) {
+			List<MethodInfo> named = entry.getValue();
+			methodsByName.put(entry.getKey(), Collections.unmodifiableList(named));
+
+			int maxArity = 0;
+			for (MethodInfo info : named) {
+				maxArity = Math.max(maxArity, info.getArity());
+			}
+
+			List<List<MethodInfo>> byArity = new ArrayList<List<MethodInfo>>(maxArity + 1);
+			for (int arity = 0; arity <= maxArity; arity++) {
+				List<MethodInfo> sameArity = new ArrayList<MethodInfo>();
+				for (MethodInfo info : named) {
+					if (info.getArity() == arity) {
+						sameArity.add(info);
+					}
+				}
+
+				byArity.add(sameArity.isEmpty() ? NONE : Collections.unmodifiableList(sameArity));
+			}
+
+			methodsByArity.put(entry.getKey(), byArity);
+		}
+	}
+
+	/**
+	 * Obtains the index of a class, building it on first use.
+	 *
+	 * @param type
+	 *            The class.
+	 * @return The index of the class.
+	 */
+	public static ClassMetadata of(Class<?> type) {
+		return index.get(type);
+	}
+
+	/**
+	 * @return The indexed class.
+	 */
+	public Class<?> getType() {
+		return type;
+	}
+
+	/**
+	 * @return All the public methods, declared or inherited, in the same order
+	 *         as {@link Class#getMethods()}.
+	 */
+	public List<MethodInfo> getMethods() {
+		return methods;
+	}
+
+	/**
+	 * @param name
+	 *            The name of the methods.
+	 * @return The public methods with the given name.
+	 */
+	public List<MethodInfo> getMethods(String name) {
+		List<MethodInfo> named = methodsByName.get(name);
+		return named == null ? NONE : named;
+	}
+
+	/**
+	 * @param name
+	 *            The name of the methods.
+	 * @param arity
+	 *            The number of parameters of the methods.
+	 * @return The public methods with the given name and number of
+	 *         parameters.
+	 */
+	public List<MethodInfo> getMethods(String name, int arity) {
+		List<List<MethodInfo>> byArity = methodsByArity.get(name);
+		if (byArity == null || arity >= byArity.size()) {
+			return NONE;
+		}
+
+		return byArity.get(arity);
+	}
+
+	/**
+	 * Obtains the public method with exactly the given name and parameter
+	 * types. Like {@link Class#getMethod(String, Class...)}, when several
+	 * methods have the same signature the one with the most specific return
+	 * type is chosen.
+	 *
+	 * @param name
+	 *            The name of the method.
+	 * @param parameterTypes
+	 *            The exact parameter types.
+	 * @return The method or <code>null</code> if there is no such method.
+	 */
+	public MethodInfo getMethod(String name, Class<?>[] parameterTypes) {
+		List<MethodInfo> candidates = getMethods(name, parameterTypes.length);
+
+		MethodInfo result = null;
+		for (int i = 0; i < candidates.size(); i++) {
+			MethodInfo candidate = candidates.get(i);
+			if (!Arrays.equals(candidate.parameterTypes, parameterTypes)) {
+				continue;
+			}
+
+			if (result == null || result.returnType.isAssignableFrom(candidate.returnType)) {
+				result = candidate;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Obtains the index entry of a method, declared or inherited by the
+	 * class, without copying its reflection data again.
+	 *
+	 * @param method
+	 *            The method.
+	 * @return The public method equal to the given method or a new entry if
+	 *         the method is not one of the public methods of the class.
+	 */
+	public MethodInfo getMethod(Method method) {
+		List<MethodInfo> candidates = getMethods(method.getName());
+		for (int i = 0; i < candidates.size(); i++) {
+			MethodInfo candidate = candidates.get(i);
+			if (candidate.method.equals(method)) {
+				return candidate;
+			}
+		}
+
+		return new MethodInfo(method);
+	}
+
+	/**
+	 * Obtains the dispatcher that selects between the public methods with the
+	 * given name and number of parameters.
+	 *
+	 * @param name
+	 *            The name of the methods.
+	 * @param arity
+	 *            The number of parameters of the methods.
+	 * @return The dispatcher for the methods.
+	 */
+	public MultiDispatcher getDispatcher(String name, int arity) {
+		MultiDispatcher[] named = dispatchers.get(name);
+		if (named == null) {
+			List<List<MethodInfo>> byArity = methodsByArity.get(name);
+			int size = byArity == null ? 0 : byArity.size();
+
+			named = new MultiDispatcher[size];
+			for (int i = 0; i < size; i++) {
+				named[i] = new MultiDispatcher(type, byArity.get(i));
+			}
+
+			MultiDispatcher[] existing = dispatchers.putIfAbsent(name, named);
+			named = existing != null ? existing : named;
+		}
+
+		if (arity >= named.length) {
+			return new MultiDispatcher(type, NONE);
+		}
+
+		return named[arity];
+	}
+
+}
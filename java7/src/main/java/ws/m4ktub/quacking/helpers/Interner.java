@@ -0,0 +1,109 @@
+package ws.m4ktub.quacking.helpers;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps a canonical instance for each distinct immutable value so that equal
+ * values can share the same instance. The canonical instances are only kept
+ * while they are referenced elsewhere.
+ *
+ * <p>
+ * Interning does not lock so that configuring mixins in several threads does
+ * not contend. The values must be immutable and implement <tt>equals</tt> and
+ * <tt>hashCode</tt>.
+ *
+ * @author m4ktub
+ * @param <T>
+ *            The type of the values.
+ */
+public final class Interner<T> {
+
+	private final ConcurrentMap<Canonical<T>, Canonical<T>> values = new ConcurrentHashMap<Canonical<T>, Canonical<T>>();
+	private final ReferenceQueue<T> collected = new ReferenceQueue<T>();
+
+	/**
+	 * A weak reference to a canonical instance that is equal to other
+	 * references to equal values.
+	 */
+	private static final class Canonical<T> extends WeakReference<T> {
+		private final int hash;
+
+		public Canonical(T value, ReferenceQueue<T> queue) {
+			super(value, queue);
+			this.hash = value.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+
+			if (!(obj instanceof Canonical)) {
+				return false;
+			}
+
+			Canonical<?> other = (Canonical<?>) obj;
+			if (hash != other.hash) {
+				return false;
+			}
+
+			// collected values are only equal to the same reference
+			Object value = get();
+			return value != null && value.equals(other.get());
+		}
+	}
+
+	/**
+	 * Obtains the canonical instance of a value.
+	 *
+	 * @param value
+	 *            The value to intern.
+	 * @return An instance equal to the value, which is the given value if no
+	 *         equal value was interned before.
+	 */
+	public T intern(T value) {
+		expunge();
+
+		Canonical<T> candidate = new Canonical<T>(value, collected);
+		while (true) {
+			Canonical<T> existing = values.putIfAbsent(candidate, candidate);
+			if (existing == null) {
+				return value;
+			}
+
+			T canonical = existing.get();
+			if (canonical != null) {
+				return canonical;
+			}
+
+			// collected after the lookup
+			values.remove(existing, existing);
+		}
+	}
+
+	/**
+	 * @return The number of canonical instances that are still referenced.
+	 */
+	public int size() {
+		expunge();
+		return values.size();
+	}
+
+	private void expunge() {
+		Reference<? extends T> reference;
+		while ((reference = collected.poll()) != null) {
+			values.remove(reference, reference);
+		}
+	}
+
+}
@@ -0,0 +1,251 @@
+package ws.m4ktub.quacking.helpers;
+
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.GenericDeclaration;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ws.m4ktub.quacking.helpers.ClassMetadata.MethodInfo;
+
+/**
+ * Selects the most specific method, from a set of overloads with the same name
+ * and number of parameters, for the actual types of the arguments.
+ *
+ * <p>
+ * The most specific method is found by left-to-right disambiguation. For the
+ * first parameter, the methods whose parameter type is closest to the type of
+ * the argument are considered first. The remaining parameters decide between
+ * those methods and, only if none of them accepts the remaining arguments,
+ * the methods that are farther away are considered.
+ *
+ * <p>
+ * Selections are remembered in a trie with one level for each parameter, keyed
+ * by the argument type. After the first call with some argument types, the
+ * same selection takes one map lookup per argument and allocates nothing. Only
+ * argument types visible from the class declaring the overloads are
+ * remembered, so that no class loader is kept alive by the trie.
+ *
+ * @author m4ktub
+ */
+public final class MultiDispatcher {
+
+	/**
+	 * The maximum number of argument type combinations remembered.
+	 */
+	public static final int MAX_SELECTIONS = 4096;
+
+	private static final class Node {
+		private final ConcurrentMap<Type, Node> children = new ConcurrentHashMap<Type, Node>();
+		private volatile boolean selected;
+		private Method method;
+	}
+
+	private final ClassLoader classLoader;
+	private final MethodInfo[] candidates;
+	private final Node root = new Node();
+	private final AtomicInteger selections = new AtomicInteger();
+
+	/**
+	 * Creates a dispatcher for a set of overloads.
+	 *
+	 * @param type
+	 *            The class where the methods were found.
+	 * @param candidates
+	 *            The methods with the same name and number of parameters.
+	 */
+	MultiDispatcher(Class<?> type, List<MethodInfo> candidates) {
+		this.classLoader = type.getClassLoader();
+		this.candidates = candidates.toArray(new MethodInfo[candidates.size()]);
+	}
+
+	/**
+	 * Selects the most specific method for the given argument types.
+	 *
+	 * @param argTypes
+	 *            The types of the arguments, one for each parameter.
+	 * @return The most specific method or <code>null</code> if no method
+	 *         accepts arguments of the given types.
+	 */
+	public Method select(Type[] argTypes) {
+		Node node = root;
+		for (int i = 0; i < argTypes.length && node != null; i++) {
+			node = argTypes[i] == null ? null : node.children.get(argTypes[i]);
+		}
+
+		if (node != null && node.selected) {
+			return node.method;
+		}
+
+		Method method = resolve(argTypes);
+		remember(argTypes, method);
+		return method;
+	}
+
+	private Method resolve(Type[] argTypes) {
+		int[] group = new int[candidates.length];
+		for (int i = 0; i < group.length; i++) {
+			group[i] = i;
+		}
+
+		MethodInfo result = resolve(group, group.length, argTypes, 0);
+		return result == null ? null : result.getMethod();
+	}
+
+	private MethodInfo resolve(int[] group, int size, Type[] argTypes, int pos) {
+		if (size == 0) {
+			return null;
+		}
+
+		if (pos >= argTypes.length) {
+			return candidates[group[0]];
+		}
+
+		int[] scores = new int[size];
+		for (int i = 0; i < size; i++) {
+			Type paramType = candidates[group[i]].getGenericParameterTypes()[pos];
+			scores[i] = getAssignableScore(paramType, argTypes[pos]);
+		}
+
+		// try the closest methods first and then the others by distance
+		int previous = -1;
+		int[] closest = new int[size];
+
+		while (true) {
+			int score = Integer.MAX_VALUE;
+			for (int i = 0; i < size; i++) {
+				if (scores[i] > previous && scores[i] < score) {
+					score = scores[i];
+				}
+			}
+
+			if (score == Integer.MAX_VALUE) {
+				return null;
+			}
+
+			int closestSize = 0;
+			for (int i = 0; i < size; i++) {
+				if (scores[i] == score) {
+					closest[closestSize++] = group[i];
+				}
+			}
+
+			MethodInfo result = resolve(closest, closestSize, argTypes, pos + 1);
+			if (result != null) {
+				return result;
+			}
+
+			previous = score;
+		}
+	}
+
+	private static int getAssignableScore(Type paramType, Type argType) {
+		if (argType == null || paramType.equals(argType)) {
+			// reached Object or the same type
+			return 0;
+		}
+
+		if (!Reflections.isTypeCompatible(paramType, argType)) {
+			return -1;
+		}
+
+		if (Reflections.isPrimitive(paramType) || Reflections.isPrimitive(argType)) {
+			// if dealing with a primitive type do not go up in the wrapper
+			// object's type hierarchy.
+			return 0;
+		}
+
+		// distance through super classes and interfaces
+		int score = TypeCompatibility.getDistance(TypeCompatibility.getRawType(paramType), TypeCompatibility.getRawType(argType));
+		if (score < 0) {
+			// compatible but not through the hierarchy, so the least specific
+			return Integer.MAX_VALUE / 2;
+		}
+
+		return score;
+	}
+
+	private boolean isVisible(Type type) {
+		if (type instanceof Class<?>) {
+			return Reflections.isVisible(classLoader, (Class<?>) type);
+		}
+
+		if (type instanceof TypeVariable<?>) {
+			GenericDeclaration declaration = ((TypeVariable<?>) type).getGenericDeclaration();
+			Class<?> declaringClass = declaration instanceof Class<?> ? (Class<?>) declaration : ((Member) declaration).getDeclaringClass();
+			return Reflections.isVisible(classLoader, declaringClass);
+		}
+
+		if (type instanceof ParameterizedType) {
+			for (Type argument : ((ParameterizedType) type).getActualTypeArguments()) {
+				if (!isVisible(argument)) {
+					return false;
+				}
+			}
+
+			return isVisible(((ParameterizedType) type).getRawType());
+		}
+
+		if (type instanceof GenericArrayType) {
+			return isVisible(((GenericArrayType) type).getGenericComponentType());
+		}
+
+		if (type instanceof WildcardType) {
+			WildcardType wildcardType = (WildcardType) type;
+			for (Type bound : wildcardType.getUpperBounds()) {
+				if (!isVisible(bound)) {
+					return false;
+				}
+			}
+
+			for (Type bound : wildcardType.getLowerBounds()) {
+				if (!isVisible(bound)) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		return false;
+	}
+
+	private void remember(Type[] argTypes, Method method) {
+		for (int i = 0; i < argTypes.length; i++) {
+			if (argTypes[i] == null || !isVisible(argTypes[i])) {
+				return;
+			}
+		}
+
+		if (selections.get() >= MAX_SELECTIONS) {
+			return;
+		}
+
+		Node node = root;
+		for (int i = 0; i < argTypes.length; i++) {
+			Node child = node.children.get(argTypes[i]);
+			if (child == null) {
+				child = new Node();
+
+				Node existing = node.children.putIfAbsent(argTypes[i], child);
+				child = existing != null ? existing : child;
+			}
+
+			node = child;
+		}
+
+		if (!node.selected) {
+			node.method = method;
+			node.selected = true;
+			selections.incrementAndGet();
+		}
+	}
+
+}
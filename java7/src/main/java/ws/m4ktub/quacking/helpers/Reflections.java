@@ -3,15 +3,16 @@ package ws.m4ktub.quacking.helpers;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
-import java.lang.reflect.TypeVariable;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
+import ws.m4ktub.quacking.CurryPlan;
 import ws.m4ktub.quacking.DuckWing;
 import ws.m4ktub.quacking.Invocation;
+import ws.m4ktub.quacking.MethodBinding;
 import ws.m4ktub.quacking.Mixed;
 import ws.m4ktub.quacking.Mixed.MethodConfiguration;
+import ws.m4ktub.quacking.helpers.ClassMetadata.MethodInfo;
 
 /**
  * Utility methods related with reflection classes.
@@ -112,31 +113,34 @@ public final class Reflections {
 	 *         arguments..
 	 */
 	public static Invocation getMethodInvocation(Mixed object, Method intfMethod, Object[] args) {
-		Object instance = object.getInstance();
+		Class<?> instanceClass = object.getMetadata().getType();
 		Object[] methodArgs = args;
-		Object[] curriedArgs = null;
+		CurryPlan curryPlan = null;
 
 		if (methodArgs == null) {
 			methodArgs = new Object[0];
 		}
 
-		String methodName = intfMethod.getName();
-		Class<?>[] intfMethodParameterTypes = intfMethod.getParameterTypes();
-		Type[] intfMultiParameterTypes = getMultiDispatchParameterTypes(intfMethod, methodArgs);
+		MethodInfo intfInfo = getInterfaceMethod(intfMethod);
+		String methodName = intfInfo.getName();
+		Class<?>[] intfMethodParameterTypes = intfInfo.getParameterTypes();
+		Type[] intfMultiParameterTypes = object.isStaticDispatch() ? intfInfo.getDispatchTypes() : getMultiDispatchParameterTypes(intfInfo, methodArgs);
 
 		Class<?>[] parameterTypes = intfMethodParameterTypes;
 		Type[] multiParameterTypes = intfMultiParameterTypes;
 
-		DuckWing wing = null;
-
 		Invocation cachedInvocation = object.getCachedInvocation(intfMethod, intfMultiParameterTypes);
 		if (cachedInvocation != null) {
 			return cachedInvocation;
 		}
 
+		DuckWing wing = object.getAroundHandler(methodName);
+
 		if (!object.hasConfigurationFor(methodName)) {
-			if (intfMethod.getDeclaringClass().isAssignableFrom(instance.getClass())) {
-				return new Invocation(instance, wing, intfMethod, null);
+			if (intfMethod.getDeclaringClass().isAssignableFrom(instanceClass)) {
+				Invocation invocation = object.bind(getImplementedBinding(instanceClass, intfMethod), wing, null);
+				object.cacheInvocation(intfMethod, intfMultiParameterTypes, invocation);
+				return invocation;
 			}
 		} else {
 			MethodConfiguration objMethodConf = object.getConfigurationFor(methodName);
@@ -146,161 +150,226 @@ public final class Reflections {
 			}
 
 			if (objMethodConf.isCurried()) {
-				Class<?>[] curriedTypes = objMethodConf.getCurriedTypes();
-				curriedArgs = objMethodConf.getCurriedArgs();
-
-				parameterTypes = new Class<?>[curriedArgs.length + methodArgs.length];
-				multiParameterTypes = new Class<?>[curriedArgs.length + methodArgs.length];
-				methodArgs = new Object[curriedArgs.length + methodArgs.length];
-
-				int argsPos = 0;
-				int curriedPos = 0;
-				for (int i = 0; i < methodArgs.length; i++) {
-					boolean curry = curriedArgs.length > curriedPos && curriedArgs[argsPos] != Invocation.CURRY_MISS;
-
-					if (curry) {
-						Object curriedArg = curriedArgs[curriedPos];
-						Class<?> curriedType = curriedTypes[curriedPos];
-
-						methodArgs[i] = curriedArg;
-						parameterTypes[i] = curriedType;
-						multiParameterTypes[i] = curriedArg != null ? curriedArg.getClass() : curriedType;
-						curriedPos++;
-					} else {
-						methodArgs[i] = args[argsPos];
-						parameterTypes[i] = intfMethodParameterTypes[argsPos];
-						multiParameterTypes[i] = intfMultiParameterTypes[argsPos];
-						argsPos++;
-						curriedPos++;
-					}
+				curryPlan = objMethodConf.getCurryPlan();
+				parameterTypes = curryPlan.getParameterTypes(intfMethod);
+				if (parameterTypes == null) {
+					return null;
 				}
-			}
 
-			if (objMethodConf.isWrapped()) {
-				wing = objMethodConf.getAroundHandler();
+				multiParameterTypes = curryPlan.getArgumentTypes(intfMultiParameterTypes);
 			}
-
 		}
 
-		Method objMethod = getJavaMethod(instance, methodName, parameterTypes);
-		if (objMethod == null) {
-			objMethod = getMultiDispatchMethod(instance, methodName, multiParameterTypes, methodArgs);
-		}
+		// reuse the resolution of other instances of the same class
+		MethodBinding binding = getBinding(object, intfMethod, methodName, parameterTypes, multiParameterTypes);
 
-		if (objMethod == null) {
+		if (!binding.isResolved()) {
 			return null;
 		}
 
-		// check compatible return types
-		Type intfMethodReturnType = intfMethod.getGenericReturnType();
-		Type implMethodReturnType = objMethod.getGenericReturnType();
-
-		if (!isTypeCompatible(intfMethodReturnType, implMethodReturnType)) {
-			return null;
-		}
-
-		Invocation invocation = new Invocation(object.getInstance(), wing, objMethod, curriedArgs);
+		Invocation invocation = object.bind(binding, wing, curryPlan);
 		object.cacheInvocation(intfMethod, intfMultiParameterTypes, invocation);
 		return invocation;
 	}
 
-	private static Method getJavaMethod(Object object, String method, Class<?>[] parameterTypes) {
-		try {
-			Class<?> objClass = object.getClass();
-			return objClass.getMethod(method, parameterTypes);
-		} catch (NoSuchMethodException e) {
-			return null;
-		}
-	}
+	/**
+	 * Obtains the shared binding of a method, with the given name, that is
+	 * compatible with the interface method and accepts arguments of the given
+	 * types.
+	 */
+	private static MethodBinding getBinding(Mixed object, Method intfMethod, String methodName, Class<?>[] parameterTypes, Type[] multiParameterTypes) {
+		Class<?> instanceClass = object.getMetadata().getType();
+		MethodBinding binding = ResolutionCache.get(instanceClass, intfMethod, methodName, parameterTypes, multiParameterTypes);
 
-	private static Method getMultiDispatchMethod(Object object, String method, Type[] parameterTypes, Object[] args) {
-		// get candidates
-		List<Method> candidates = getMethodsWithName(object.getClass(), method);
-		if (candidates.isEmpty()) {
-			return null;
-		}
+		if (binding == null) {
+			ClassMetadata metadata = object.getMetadata();
+			MethodInfo exactMethod = metadata.getMethod(methodName, parameterTypes);
+
+			Method objMethod = exactMethod == null ? null : exactMethod.getMethod();
+			if (objMethod == null) {
+				objMethod = getMultiDispatchMethod(metadata, methodName, multiParameterTypes);
+			}
 
-		// ignore those with different parameter count
-		Iterator<Method> candidatesIterator = candidates.iterator();
-		while (candidatesIterator.hasNext()) {
-			Method candidate = (Method) candidatesIterator.next();
+			// check compatible return types
+			if (objMethod != null) {
+				Type intfMethodReturnType = intfMethod.getGenericReturnType();
+				Type implMethodReturnType = objMethod.getGenericReturnType();
 
-			if (candidate.getParameterTypes().length != args.length) {
-				candidatesIterator.remove();
+				if (!isTypeCompatible(intfMethodReturnType, implMethodReturnType)) {
+					objMethod = null;
+				}
 			}
-		}
 
-		if (candidates.isEmpty()) {
-			return null;
+			// failures are also cached so that they are not searched again
+			binding = objMethod == null ? MethodBinding.NONE : MethodBinding.of(objMethod);
+			binding = ResolutionCache.put(instanceClass, intfMethod, methodName, parameterTypes, multiParameterTypes, binding);
 		}
 
-		// find most specific method using left-to-right disambiguation
-		return getMultiDispatchMethodMatch(candidates, parameterTypes, 0);
+		return binding;
 	}
 
-	private static Method getMultiDispatchMethodMatch(List<Method> candidates, Type[] concreteParameterTypes, int pos) {
-		if (candidates.isEmpty()) {
-			return null;
+	/**
+	 * Obtains the shared binding of an interface method for a class that
+	 * implements the interface.
+	 */
+	private static MethodBinding getImplementedBinding(Class<?> instanceClass, Method intfMethod) {
+		MethodBinding binding = ResolutionCache.get(instanceClass, intfMethod, null, null, null);
+		if (binding == null) {
+			binding = ResolutionCache.put(instanceClass, intfMethod, null, null, null, MethodBinding.of(intfMethod));
 		}
 
-		if (pos >= concreteParameterTypes.length) {
-			return candidates.get(0);
-		}
+		return binding;
+	}
+
+	/**
+	 * Obtains an invocation for a compatible method that does not depend on
+	 * the actual arguments of the call. That is the case when the instance
+	 * implements the interface or has a method with the exact parameter types
+	 * of the interface method.
+	 * <p>
+	 * The resolution follows the same rules as
+	 * {@link #getMethodInvocation(Mixed, Method, Object[])} and the resulting
+	 * invocation is the one that method would return for any arguments.
+	 *
+	 * @param object
+	 *            The mixed instance where to look for a compatible method.
+	 * @param intfMethod
+	 *            The template method used to obtain the name and types.
+	 * @return The invocation for the compatible method or <code>null</code> if
+	 *         there is no such method or the method can only be resolved
+	 *         with the actual arguments.
+	 * @see #isMultiDispatchCandidate(Mixed, Method)
+	 */
+	public static Invocation getStaticInvocation(Mixed object, Method intfMethod) {
+		Class<?> instanceClass = object.getMetadata().getType();
+		String methodName = intfMethod.getName();
+		DuckWing wing = object.getAroundHandler(methodName);
+
+		if (!object.hasConfigurationFor(methodName)) {
+			if (intfMethod.getDeclaringClass().isAssignableFrom(instanceClass)) {
+				return object.bind(getImplementedBinding(instanceClass, intfMethod), wing, null);
+			}
+		} else {
+			MethodConfiguration objMethodConf = object.getConfigurationFor(methodName);
 
-		int score = Integer.MAX_VALUE;
-		List<Method> others = new ArrayList<Method>();
-		List<Method> best = new ArrayList<Method>();
-		Type concreteParamType = concreteParameterTypes[pos];
+			if (objMethodConf.isRenamed()) {
+				methodName = objMethodConf.getRename();
+			}
 
-		Iterator<Method> candidatesIterator = candidates.iterator();
-		while (candidatesIterator.hasNext()) {
-			Method method = candidatesIterator.next();
-			Type paramType = method.getGenericParameterTypes()[pos];
+			if (objMethodConf.isCurried()) {
+				// resolved with the curried arguments unless arguments can
+				// only have the declared types
+				Type[] staticParameterTypes = getStaticDispatchParameterTypes(object, intfMethod);
+				if (staticParameterTypes == null) {
+					return null;
+				}
 
-			int paramScore = getAssignableScore(paramType, concreteParamType);
-			if (paramScore < 0) {
-				continue;
+				CurryPlan curryPlan = objMethodConf.getCurryPlan();
+				Class<?>[] parameterTypes = curryPlan.getParameterTypes(intfMethod);
+				if (parameterTypes == null) {
+					return null;
+				}
+
+				MethodBinding binding = getBinding(object, intfMethod, methodName, parameterTypes, curryPlan.getArgumentTypes(staticParameterTypes));
+				return binding.isResolved() ? object.bind(binding, wing, curryPlan) : null;
 			}
+		}
+
+		// arguments can only have the declared types
+		Class<?>[] parameterTypes = getInterfaceMethod(intfMethod).getParameterTypes();
+		Type[] staticParameterTypes = getStaticDispatchParameterTypes(object, intfMethod);
+		if (staticParameterTypes != null) {
+			MethodBinding binding = getBinding(object, intfMethod, methodName, parameterTypes, staticParameterTypes);
+			return binding.isResolved() ? object.bind(binding, wing, null) : null;
+		}
+
+		// an exact method is independent of the arguments
+		MethodBinding binding = ResolutionCache.get(instanceClass, intfMethod, methodName, parameterTypes, null);
 
-			if (paramScore == score) {
-				best.add(method);
-			} else if (paramScore < score) {
-				score = paramScore;
-				others.addAll(best);
-				best.clear();
-				best.add(method);
-			} else {
-				others.add(method);
+		if (binding == null) {
+			MethodInfo objMethod = object.getMetadata().getMethod(methodName, parameterTypes);
+			if (objMethod != null && !isTypeCompatible(intfMethod.getGenericReturnType(), objMethod.getGenericReturnType())) {
+				objMethod = null;
 			}
+
+			binding = objMethod == null ? MethodBinding.NONE : MethodBinding.of(objMethod.getMethod());
+			binding = ResolutionCache.put(instanceClass, intfMethod, methodName, parameterTypes, null, binding);
 		}
 
-		Method result = getMultiDispatchMethodMatch(best, concreteParameterTypes, pos + 1);
-		if (result == null) {
-			result = getMultiDispatchMethodMatch(others, concreteParameterTypes, pos);
+		if (!binding.isResolved()) {
+			return null;
 		}
 
-		return result;
+		return object.bind(binding, wing, null);
 	}
 
-	private static int getAssignableScore(Type paramType, Type argType) {
-		if (argType == null || paramType.equals(argType)) {
-			// reached Object or the same type
-			return 0;
+	/**
+	 * Checks if the mixed instance may provide a compatible method depending
+	 * on the actual arguments of the call. When that is not the case, the
+	 * compatible method is given by
+	 * {@link #getStaticInvocation(Mixed, Method)} or there is no compatible
+	 * method at all.
+	 *
+	 * @param object
+	 *            The mixed instance where to look for a compatible method.
+	 * @param intfMethod
+	 *            The template method used to obtain the name and types.
+	 * @return <code>true</code> if the invocation must be resolved with the
+	 *         actual arguments.
+	 */
+	public static boolean isMultiDispatchCandidate(Mixed object, Method intfMethod) {
+		String methodName = intfMethod.getName();
+
+		if (!object.hasConfigurationFor(methodName)) {
+			if (intfMethod.getDeclaringClass().isAssignableFrom(object.getMetadata().getType())) {
+				return false;
+			}
+		} else {
+			MethodConfiguration objMethodConf = object.getConfigurationFor(methodName);
+
+			if (objMethodConf.isCurried()) {
+				// overloads without enough arguments are never resolved
+				return objMethodConf.getCurryPlan().accepts(getInterfaceMethod(intfMethod).getArity());
+			}
+
+			if (objMethodConf.isRenamed()) {
+				methodName = objMethodConf.getRename();
+			}
 		}
 
-		if (!isTypeCompatible(paramType, argType)) {
-			return -1;
+		if (getStaticDispatchParameterTypes(object, intfMethod) != null) {
+			return false;
 		}
 
-		if (isPrimitive(paramType) || isPrimitive(argType)) {
-			// if dealing with a primitive type do not go up in the wrapper
-			// object's type hierarchy.
-			return 0;
+		ClassMetadata metadata = object.getMetadata();
+		Class<?>[] parameterTypes = getInterfaceMethod(intfMethod).getParameterTypes();
+		if (metadata.getMethod(methodName, parameterTypes) != null) {
+			return false;
 		}
 
-		Class<?> classArgType = (Class<?>) argType;
-		int score = getAssignableScore(paramType, classArgType.getSuperclass());
-		return score < 0 ? -1 : score + 1;
+		return !metadata.getMethods(methodName, parameterTypes.length).isEmpty();
+	}
+
+	/**
+	 * Obtains a public method, declared or inherited by the given class, with
+	 * exactly the given name and parameter types.
+	 * 
+	 * @param clazz
+	 *            The target class use to search for the method.
+	 * @param name
+	 *            The name of the method.
+	 * @param parameterTypes
+	 *            The exact parameter types of the method.
+	 * @return The method or <code>null</code> if there is no such method.
+	 */
+	public static Method getPublicMethod(Class<?> clazz, String name, Class<?>[] parameterTypes) {
+		MethodInfo info = ClassMetadata.of(clazz).getMethod(name, parameterTypes);
+		return info == null ? null : info.getMethod();
+	}
+
+	private static Method getMultiDispatchMethod(ClassMetadata metadata, String method, Type[] parameterTypes) {
+		// find most specific method using left-to-right disambiguation
+		return metadata.getDispatcher(method, parameterTypes.length).select(parameterTypes);
 	}
 
 	/**
@@ -340,6 +409,10 @@ public final class Reflections {
 	 *         each parameter.
 	 */
 	public static Type[] getMultiDispatchParameterTypes(Method method, Object[] argumentTypes) {
+		return getMultiDispatchParameterTypes(getInterfaceMethod(method), argumentTypes);
+	}
+
+	private static Type[] getMultiDispatchParameterTypes(MethodInfo method, Object[] argumentTypes) {
 		Type[] genericParameterTypes = method.getGenericParameterTypes();
 
 		Type[] result = new Type[argumentTypes.length];
@@ -351,6 +424,59 @@ public final class Reflections {
 		return result;
 	}
 
+	/**
+	 * Obtains the types used to resolve a method without inspecting the actual
+	 * arguments. That is possible when the mixed instance was configured for
+	 * {@link Mixed#staticDispatch() static dispatch} or when no argument can
+	 * have a type more specific than the declared parameter type, because all
+	 * parameters are primitive types or final classes.
+	 * 
+	 * <p>
+	 * Primitive parameters are represented by their wrapper types, which is
+	 * the type of any argument passed to them.
+	 * </p>
+	 * 
+	 * @param object
+	 *            The mixed instance where the method will be resolved.
+	 * @param method
+	 *            The interface method.
+	 * @return The types for each parameter or <code>null</code> if the method
+	 *         must be resolved with the types of the actual arguments. The
+	 *         array is shared and must not be modified.
+	 */
+	public static Type[] getStaticDispatchParameterTypes(Mixed object, Method method) {
+		MethodInfo info = getInterfaceMethod(method);
+		if (!object.isStaticDispatch() && !info.isExactDispatch()) {
+			return null;
+		}
+
+		return info.getDispatchTypes();
+	}
+
+	/**
+	 * Obtains the indexed reflection data of an interface method so that the
+	 * parameter types are not copied on each resolution.
+	 */
+	private static MethodInfo getInterfaceMethod(Method intfMethod) {
+		return ClassMetadata.of(intfMethod.getDeclaringClass()).getMethod(intfMethod);
+	}
+
+	/**
+	 * Checks if all values of a type have exactly that type.
+	 */
+	static boolean isExactType(Type type) {
+		if (!(type instanceof Class<?>)) {
+			return false;
+		}
+
+		Class<?> typeClass = (Class<?>) type;
+		if (typeClass.isArray()) {
+			return isExactType(typeClass.getComponentType());
+		}
+
+		return typeClass.isPrimitive() || Modifier.isFinal(typeClass.getModifiers());
+	}
+
 	/**
 	 * Obtains all public methods, declared or inherited by the given class, and
 	 * with a particular name.
@@ -363,19 +489,11 @@ public final class Reflections {
 	 *         particular order.
 	 */
 	public static List<Method> getMethodsWithName(Class<?> clazz, String name) {
-		List<Method> result = new ArrayList<Method>();
-
-		final String internedName = name.intern();
-		final Method[] methods = clazz.getMethods();
-
-		for (int i = 0; i < methods.length; i++) {
-			Method m = methods[i];
-
-			if (m.getName() != internedName) {
-				continue;
-			}
+		List<MethodInfo> methods = ClassMetadata.of(clazz).getMethods(name);
 
-			result.add(m);
+		List<Method> result = new ArrayList<Method>(methods.size());
+		for (int i = 0; i < methods.size(); i++) {
+			result.add(methods.get(i).getMethod());
 		}
 
 		return result;
@@ -394,60 +512,10 @@ public final class Reflections {
 	 * @return <code>true</code> if a value of the given value type can be
 	 *         assigned to a place of the given target type without violating
 	 *         any type restrictions.
+	 * @see TypeCompatibility
 	 */
 	public static boolean isTypeCompatible(Type targetType, Type valueType) {
-		if (targetType instanceof Class<?>) {
-			return isTypeCompatibleValue((Class<?>) targetType, valueType);
-		}
-
-		if (targetType instanceof TypeVariable<?>) {
-			TypeVariable<?> typeVariableType = (TypeVariable<?>) targetType;
-			Type[] bounds = typeVariableType.getBounds();
-
-			boolean boundsCompatible = true;
-			for (int i = 0; i < bounds.length; i++) {
-				boundsCompatible &= isTypeCompatible(bounds[i], valueType);
-
-				if (!boundsCompatible) {
-					break;
-				}
-			}
-
-			return boundsCompatible;
-		}
-
-		return false;
-	}
-
-	private static boolean isTypeCompatibleValue(Class<?> targetType, Type valueType) {
-		// If the interface expects no results (void) then any value is
-		// acceptable as it will be ignored
-		if (targetType.equals(Void.class) || targetType.equals(Void.TYPE)) {
-			return true;
-		}
-
-		// In other cases, type compatibility must be verified
-		if (valueType instanceof Class<?>) {
-			return isGenerallyAssignableFrom(targetType, (Class<?>) valueType);
-		}
-
-		if (valueType instanceof TypeVariable<?>) {
-			TypeVariable<?> typeVariableType = (TypeVariable<?>) valueType;
-			Type[] bounds = typeVariableType.getBounds();
-
-			boolean boundsCompatible = false;
-			for (int i = 0; i < bounds.length; i++) {
-				boundsCompatible |= isTypeCompatible(targetType, bounds[i]);
-
-				if (boundsCompatible) {
-					break;
-				}
-			}
-
-			return boundsCompatible;
-		}
-
-		return false;
+		return TypeCompatibility.isCompatible(targetType, valueType);
 	}
 
 	/**
@@ -474,6 +542,54 @@ public final class Reflections {
 		return false;
 	}
 
+	/**
+	 * Obtains the wrapper type of a primitive type.
+	 *
+	 * @param type
+	 *            Any type.
+	 * @return The wrapper class if the type is primitive or the same type
+	 *         otherwise.
+	 */
+	public static Class<?> getWrapperType(Class<?> type) {
+		for (int i = 0; i < PRIMITIVE_TYPES.length; i++) {
+			if (PRIMITIVE_TYPES[i][0] == type) {
+				return PRIMITIVE_TYPES[i][1];
+			}
+		}
+
+		return type;
+	}
+
+	/**
+	 * Checks if a class can be reached from a class loader. A class is
+	 * reachable if it was loaded by the class loader itself, one of its
+	 * parents, or the bootstrap class loader. Holding a reference to such a
+	 * class from something owned by the class loader does not prevent other
+	 * class loaders from being collected.
+	 *
+	 * @param classLoader
+	 *            The class loader, or <code>null</code> for the bootstrap
+	 *            class loader.
+	 * @param type
+	 *            The class to check.
+	 * @return <code>true</code> if the class is visible from the class
+	 *         loader.
+	 */
+	public static boolean isVisible(ClassLoader classLoader, Class<?> type) {
+		ClassLoader typeLoader = type.getClassLoader();
+		if (typeLoader == null) {
+			return true;
+		}
+
+		for (ClassLoader current = classLoader; current != null; current = current.getParent()) {
+			if (current == typeLoader) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
 	private static boolean isPrimitiveAssignable(Class<?> returnType, Class<?> valueType) {
 		for (int i = 0; i < PRIMITIVE_TYPES.length; i++) {
 			Class<?>[] primitivePair = PRIMITIVE_TYPES[i];
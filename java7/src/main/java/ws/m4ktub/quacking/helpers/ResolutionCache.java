@@ -0,0 +1,178 @@
+package ws.m4ktub.quacking.helpers;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import ws.m4ktub.quacking.MethodBinding;
+
+/**
+ * A process wide cache of method resolutions. Resolutions are kept for each
+ * implementation class and are identified by the interface method, the name
+ * and parameter types used in the search, after applying rename and curry
+ * configurations, and the types of the actual arguments. Since the
+ * resolution does not depend on the instances, all instances of the same
+ * class share the same {@link MethodBinding}. Failed resolutions are cached as
+ * {@link MethodBinding#NONE} so that classes without a compatible method are
+ * skipped without searching again.
+ *
+ * <p>
+ * The resolutions are attached to the implementation class and only
+ * resolutions that reference classes visible from that class are cached. This
+ * way the cache never keeps alive a class loader that would otherwise be
+ * collected.
+ *
+ * @author m4ktub
+ */
+public final class ResolutionCache {
+
+	/**
+	 * The maximum number of resolutions kept for each implementation class.
+	 */
+	public static final int MAX_RESOLUTIONS_PER_CLASS = 1024;
+
+	private static final ClassValue<ConcurrentMap<Key, MethodBinding>> resolutions = new ClassValue<ConcurrentMap<Key, MethodBinding>>() {
+		@Override
+		protected ConcurrentMap<Key, MethodBinding> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<Key, MethodBinding>();
+		}
+	};
+
+	private static final class Key {
+		private final Method intfMethod;
+		private final String methodName;
+		private final Class<?>[] parameterTypes;
+		private final Type[] argTypes;
+		private final int hash;
+
+		public Key(Method intfMethod, String methodName, Class<?>[] parameterTypes, Type[] argTypes) {
+			this.intfMethod = intfMethod;
+			this.methodName = methodName;
+			this.parameterTypes = parameterTypes;
+			this.argTypes = argTypes;
+
+			int hash = intfMethod.hashCode();
+			hash = 31 * hash + (methodName == null ? 0 : methodName.hashCode());
+			hash = 31 * hash + Arrays.hashCode(parameterTypes);
+			hash = 31 * hash + Arrays.hashCode(argTypes);
+			this.hash = hash;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+
+			Key other = (Key) obj;
+			if (hash != other.hash || !intfMethod.equals(other.intfMethod)) {
+				return false;
+			}
+
+			if (methodName == null ? other.methodName != null : !methodName.equals(other.methodName)) {
+				return false;
+			}
+
+			return Arrays.equals(parameterTypes, other.parameterTypes) && Arrays.equals(argTypes, other.argTypes);
+		}
+	}
+
+	private ResolutionCache() {
+	}
+
+	/**
+	 * Obtains a cached resolution.
+	 *
+	 * @param implClass
+	 *            The class of the instance where the method was resolved.
+	 * @param intfMethod
+	 *            The interface method being called.
+	 * @param methodName
+	 *            The name of the method searched in the class or
+	 *            <code>null</code> if the class implements the interface.
+	 * @param parameterTypes
+	 *            The parameter types searched in the class or
+	 *            <code>null</code> if they do not influence the resolution.
+	 * @param argTypes
+	 *            The types of the actual arguments or <code>null</code> if
+	 *            they do not influence the resolution.
+	 * @return The cached binding or <code>null</code> if the resolution is not
+	 *         cached.
+	 */
+	public static MethodBinding get(Class<?> implClass, Method intfMethod, String methodName, Class<?>[] parameterTypes, Type[] argTypes) {
+		return resolutions.get(implClass).get(new Key(intfMethod, methodName, parameterTypes, argTypes));
+	}
+
+	/**
+	 * Caches a resolution, if it only references classes visible from the
+	 * implementation class.
+	 *
+	 * @param implClass
+	 *            The class of the instance where the method was resolved.
+	 * @param intfMethod
+	 *            The interface method being called.
+	 * @param methodName
+	 *            The name of the method searched in the class or
+	 *            <code>null</code> if the class implements the interface.
+	 * @param parameterTypes
+	 *            The parameter types searched in the class or
+	 *            <code>null</code> if they do not influence the resolution.
+	 * @param argTypes
+	 *            The types of the actual arguments or <code>null</code> if
+	 *            they do not influence the resolution.
+	 * @param binding
+	 *            The resolved binding.
+	 * @return The binding that is cached, which may have been cached
+	 *         concurrently, or the given binding if it could not be cached.
+	 */
+	public static MethodBinding put(Class<?> implClass, Method intfMethod, String methodName, Class<?>[] parameterTypes, Type[] argTypes, MethodBinding binding) {
+		if (!isCacheable(implClass, intfMethod, parameterTypes, argTypes)) {
+			return binding;
+		}
+
+		ConcurrentMap<Key, MethodBinding> classResolutions = resolutions.get(implClass);
+		if (classResolutions.size() >= MAX_RESOLUTIONS_PER_CLASS) {
+			return binding;
+		}
+
+		Class<?>[] parameterTypesCopy = parameterTypes == null ? null : parameterTypes.clone();
+		Type[] argTypesCopy = argTypes == null ? null : argTypes.clone();
+
+		MethodBinding existing = classResolutions.putIfAbsent(new Key(intfMethod, methodName, parameterTypesCopy, argTypesCopy), binding);
+		return existing != null ? existing : binding;
+	}
+
+	private static boolean isCacheable(Class<?> implClass, Method intfMethod, Class<?>[] parameterTypes, Type[] argTypes) {
+		ClassLoader classLoader = implClass.getClassLoader();
+		if (!Reflections.isVisible(classLoader, intfMethod.getDeclaringClass())) {
+			return false;
+		}
+
+		if (parameterTypes != null) {
+			for (Class<?> parameterType : parameterTypes) {
+				if (!Reflections.isVisible(classLoader, parameterType)) {
+					return false;
+				}
+			}
+		}
+
+		if (argTypes != null) {
+			for (Type argType : argTypes) {
+				// generic types come from the interface method
+				if (argType instanceof Class<?> && !Reflections.isVisible(classLoader, (Class<?>) argType)) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+}
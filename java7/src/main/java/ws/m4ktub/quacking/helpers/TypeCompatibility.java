@@ -0,0 +1,448 @@
+package ws.m4ktub.quacking.helpers;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Decides if values of one type can be used where another type is expected
+ * and how far apart two classes are in the type hierarchy. Results are
+ * memoized so that resolving methods of large generic interfaces does not
+ * repeat the same analysis.
+ *
+ * <p>
+ * For classes, each class has a table with the distance to all its super
+ * classes and interfaces, built once and attached to the class. For generic
+ * types, results are kept in a concurrent map that only references the types
+ * weakly so that no class loader is kept alive by the cache.
+ *
+ * <p>
+ * Parameterized types are compatible when the raw types are compatible and
+ * the type arguments match, considering wildcards and their bounds. When the
+ * type arguments of the value cannot be determined, because the value is a
+ * raw type or the arguments are type variables, the types are considered
+ * compatible as in an unchecked assignment. Type variables with recursive
+ * bounds are assumed to satisfy the bound when it refers back to them.
+ *
+ * @author m4ktub
+ */
+public final class TypeCompatibility {
+
+	private static final ClassValue<Map<Class<?>, Integer>> distances = new ClassValue<Map<Class<?>, Integer>>() {
+		@Override
+		protected Map<Class<?>, Integer> computeValue(Class<?> type) {
+			return computeDistances(type);
+		}
+	};
+
+	private static final ConcurrentMap<Pair, Boolean> compatibilities = new ConcurrentHashMap<Pair, Boolean>();
+	private static final ReferenceQueue<Type> collected = new ReferenceQueue<Type>();
+	private static final ThreadLocal<Set<Pair>> checking = new ThreadLocal<Set<Pair>>() {
+		@Override
+		protected Set<Pair> initialValue() {
+			return new HashSet<Pair>();
+		}
+	};
+
+	/**
+	 * A pair of types used as key of the memoized results.
+	 */
+	private abstract static class Pair {
+		protected final int hash;
+
+		public Pair(Type target, Type value) {
+			this.hash = 31 * target.hashCode() + value.hashCode();
+		}
+
+		public abstract Type getTarget();
+
+		public abstract Type getValue();
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+
+			Pair other = (Pair) obj;
+			if (hash != other.hash) {
+				return false;
+			}
+
+			Type target = getTarget();
+			Type value = getValue();
+			return target != null && value != null && target.equals(other.getTarget()) && value.equals(other.getValue());
+		}
+	}
+
+	private static final class LookupPair extends Pair {
+		private final Type target;
+		private final Type value;
+
+		public LookupPair(Type target, Type value) {
+			super(target, value);
+			this.target = target;
+			this.value = value;
+		}
+
+		@Override
+		public Type getTarget() {
+			return target;
+		}
+
+		@Override
+		public Type getValue() {
+			return value;
+		}
+	}
+
+	private static final class WeakPair extends Pair {
+		private final TypeReference target;
+		private final TypeReference value;
+
+		public WeakPair(Type target, Type value) {
+			super(target, value);
+			this.target = new TypeReference(target, this);
+			this.value = new TypeReference(value, this);
+		}
+
+		@Override
+		public Type getTarget() {
+			return target.get();
+		}
+
+		@Override
+		public Type getValue() {
+			return value.get();
+		}
+	}
+
+	private static final class TypeReference extends WeakReference<Type> {
+		private final WeakPair pair;
+
+		public TypeReference(Type type, WeakPair pair) {
+			super(type, collected);
+			this.pair = pair;
+		}
+	}
+
+	private TypeCompatibility() {
+	}
+
+	/**
+	 * Checks if a value of the given value type can be assigned to a place of
+	 * the given target type.
+	 *
+	 * @param targetType
+	 *            Any target type.
+	 * @param valueType
+	 *            The type of source value.
+	 * @return <code>true</code> if the types are compatible.
+	 * @see Reflections#isTypeCompatible(Type, Type)
+	 */
+	public static boolean isCompatible(Type targetType, Type valueType) {
+		if (targetType instanceof Class<?> && valueType instanceof Class<?>) {
+			return isClassCompatible((Class<?>) targetType, (Class<?>) valueType);
+		}
+
+		Pair pair = new LookupPair(targetType, valueType);
+		Boolean compatible = compatibilities.get(pair);
+		if (compatible == null) {
+			// recursive bounds, like T extends Comparable<T>, lead back to the
+			// same check which is then assumed to hold
+			Set<Pair> pending = checking.get();
+			if (!pending.add(pair)) {
+				return true;
+			}
+
+			try {
+				compatible = computeCompatible(targetType, valueType);
+			} finally {
+				pending.remove(pair);
+			}
+
+			// nested results may depend on assumptions of outer checks
+			if (pending.isEmpty()) {
+				expunge();
+				compatibilities.put(new WeakPair(targetType, valueType), compatible);
+			}
+		}
+
+		return compatible;
+	}
+
+	/**
+	 * Obtains the number of steps, through super classes and implemented
+	 * interfaces, needed to go from one class to another class.
+	 *
+	 * @param targetType
+	 *            The super class or interface.
+	 * @param valueType
+	 *            The sub class.
+	 * @return The distance between the classes, <tt>0</tt> if they are the
+	 *         same class, or <tt>-1</tt> if the value type is not a sub type
+	 *         of the target type.
+	 */
+	public static int getDistance(Class<?> targetType, Class<?> valueType) {
+		Integer distance = distances.get(valueType).get(targetType);
+		if (distance != null) {
+			return distance;
+		}
+
+		// arrays are covariant with their components
+		if (targetType.isArray() && valueType.isArray() && !valueType.getComponentType().isPrimitive()) {
+			return getDistance(targetType.getComponentType(), valueType.getComponentType());
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Obtains the class that represents a type after erasure.
+	 *
+	 * @param type
+	 *            Any type.
+	 * @return The raw class of the type.
+	 */
+	public static Class<?> getRawType(Type type) {
+		if (type instanceof Class<?>) {
+			return (Class<?>) type;
+		}
+
+		if (type instanceof ParameterizedType) {
+			return getRawType(((ParameterizedType) type).getRawType());
+		}
+
+		if (type instanceof GenericArrayType) {
+			Class<?> componentType = getRawType(((GenericArrayType) type).getGenericComponentType());
+			return Array.newInstance(componentType, 0).getClass();
+		}
+
+		if (type instanceof TypeVariable<?>) {
+			return getRawType(((TypeVariable<?>) type).getBounds()[0]);
+		}
+
+		if (type instanceof WildcardType) {
+			return getRawType(((WildcardType) type).getUpperBounds()[0]);
+		}
+
+		return Object.class;
+	}
+
+	private static void expunge() {
+		Reference<? extends Type> reference;
+		while ((reference = collected.poll()) != null) {
+			compatibilities.remove(((TypeReference) reference).pair);
+		}
+	}
+
+	private static Map<Class<?>, Integer> computeDistances(Class<?> type) {
+		Map<Class<?>, Integer> result = new HashMap<Class<?>, Integer>();
+		result.put(type, 0);
+
+		Queue<Class<?>> pending = new ArrayDeque<Class<?>>();
+		pending.add(type);
+
+		while (!pending.isEmpty()) {
+			Class<?> current = pending.remove();
+			int distance = result.get(current) + 1;
+
+			Class<?> superClass = current.getSuperclass();
+			if (superClass != null && !result.containsKey(superClass)) {
+				result.put(superClass, distance);
+				pending.add(superClass);
+			}
+
+			for (Class<?> superInterface : current.getInterfaces()) {
+				if (!result.containsKey(superInterface)) {
+					result.put(superInterface, distance);
+					pending.add(superInterface);
+				}
+			}
+		}
+
+		// interfaces are also objects
+		if (!type.isPrimitive() && !result.containsKey(Object.class)) {
+			result.put(Object.class, 1);
+		}
+
+		return Collections.unmodifiableMap(result);
+	}
+
+	private static boolean isClassCompatible(Class<?> targetType, Class<?> valueType) {
+		// If the interface expects no results (void) then any value is
+		// acceptable as it will be ignored
+		if (targetType == Void.class || targetType == Void.TYPE) {
+			return true;
+		}
+
+		if (distances.get(valueType).containsKey(targetType)) {
+			return true;
+		}
+
+		return Reflections.isGenerallyAssignableFrom(targetType, valueType);
+	}
+
+	private static boolean computeCompatible(Type targetType, Type valueType) {
+		if (targetType == Void.class || targetType == Void.TYPE) {
+			return true;
+		}
+
+		if (targetType instanceof TypeVariable<?>) {
+			for (Type bound : ((TypeVariable<?>) targetType).getBounds()) {
+				if (!isCompatible(bound, valueType)) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		if (targetType instanceof WildcardType) {
+			WildcardType wildcardType = (WildcardType) targetType;
+			for (Type bound : wildcardType.getUpperBounds()) {
+				if (!isCompatible(bound, valueType)) {
+					return false;
+				}
+			}
+
+			for (Type bound : wildcardType.getLowerBounds()) {
+				if (!isCompatible(valueType, bound)) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		if (valueType instanceof TypeVariable<?>) {
+			for (Type bound : ((TypeVariable<?>) valueType).getBounds()) {
+				if (isCompatible(targetType, bound)) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		if (valueType instanceof WildcardType) {
+			for (Type bound : ((WildcardType) valueType).getUpperBounds()) {
+				if (isCompatible(targetType, bound)) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		if (targetType instanceof Class<?>) {
+			return isClassCompatible((Class<?>) targetType, getRawType(valueType));
+		}
+
+		if (targetType instanceof GenericArrayType) {
+			Type componentType = ((GenericArrayType) targetType).getGenericComponentType();
+
+			Type valueComponentType = null;
+			if (valueType instanceof GenericArrayType) {
+				valueComponentType = ((GenericArrayType) valueType).getGenericComponentType();
+			} else if (valueType instanceof Class<?>) {
+				valueComponentType = ((Class<?>) valueType).getComponentType();
+			}
+
+			return valueComponentType != null && isCompatible(componentType, valueComponentType);
+		}
+
+		if (targetType instanceof ParameterizedType) {
+			return isParameterizedCompatible((ParameterizedType) targetType, valueType);
+		}
+
+		return false;
+	}
+
+	private static boolean isParameterizedCompatible(ParameterizedType targetType, Type valueType) {
+		Class<?> rawTargetType = getRawType(targetType);
+		if (!isClassCompatible(rawTargetType, getRawType(valueType))) {
+			return false;
+		}
+
+		ParameterizedType valueParameterization = getParameterization(valueType, rawTargetType);
+		if (valueParameterization == null) {
+			// raw value, unchecked
+			return true;
+		}
+
+		Type[] targetArguments = targetType.getActualTypeArguments();
+		Type[] valueArguments = valueParameterization.getActualTypeArguments();
+
+		for (int i = 0; i < targetArguments.length; i++) {
+			if (!containsArgument(targetArguments[i], valueArguments[i])) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static boolean containsArgument(Type targetArgument, Type valueArgument) {
+		if (valueArgument instanceof TypeVariable<?>) {
+			// the actual argument is not known
+			return true;
+		}
+
+		if (targetArgument instanceof WildcardType || targetArgument instanceof TypeVariable<?>) {
+			return isCompatible(targetArgument, valueArgument);
+		}
+
+		// other type arguments are invariant
+		return targetArgument.equals(valueArgument);
+	}
+
+	/**
+	 * Finds how the given type, or one of its super types, parameterizes the
+	 * given generic class.
+	 */
+	private static ParameterizedType getParameterization(Type type, Class<?> genericClass) {
+		if (type instanceof ParameterizedType && getRawType(type) == genericClass) {
+			return (ParameterizedType) type;
+		}
+
+		Class<?> rawType = getRawType(type);
+		if (rawType == genericClass) {
+			return null;
+		}
+
+		Type superClass = rawType.getGenericSuperclass();
+		if (superClass != null && genericClass.isAssignableFrom(getRawType(superClass))) {
+			return getParameterization(superClass, genericClass);
+		}
+
+		for (Type superInterface : rawType.getGenericInterfaces()) {
+			if (genericClass.isAssignableFrom(getRawType(superInterface))) {
+				return getParameterization(superInterface, genericClass);
+			}
+		}
+
+		return null;
+	}
+
+}
@@ -0,0 +1,157 @@
+package ws.m4ktub.quacking.utils;
+
+import java.util.ArrayDeque;
+
+import ws.m4ktub.quacking.MixinTemplate;
+import ws.m4ktub.quacking.Rebindable;
+
+/**
+ * Keeps, for each thread, the instances created by a {@link MixinTemplate}
+ * that are no longer in use so that they can be rebound instead of created
+ * again.
+ *
+ * <pre>
+ * MixinPool&lt;HttpServletRequest&gt; pool = new MixinPool&lt;HttpServletRequest&gt;(template);
+ * ...
+ * HttpServletRequest mixedRequest = pool.acquire(new ForceCharacterEncoding(&quot;UTF-8&quot;), getRequest());
+ * try {
+ * 	chain.doFilter(mixedRequest, response);
+ * } finally {
+ * 	pool.release(mixedRequest);
+ * }
+ * </pre>
+ *
+ * <p>
+ * Released instances are reset, and keep no reference to the previous
+ * instances, before being available to the same thread. An instance must not
+ * be used after being released.
+ * </p>
+ *
+ * @author m4ktub
+ * @param <T>
+ *            The interface implemented by the instances.
+ * @see Rebindable
+ */
+public class MixinPool<T> {
+
+	/**
+	 * The default number of idle instances kept by each thread.
+	 */
+	public static final int DEFAULT_CAPACITY = 8;
+
+	private final MixinTemplate<T> template;
+	private final int capacity;
+	private final ThreadLocal<ArrayDeque<T>> idle = new ThreadLocal<ArrayDeque<T>>() {
+		@Override
+		protected ArrayDeque<T> initialValue() {
+			return new ArrayDeque<T>();
+		}
+	};
+
+	/**
+	 * Creates a pool that keeps up to {@link #DEFAULT_CAPACITY} idle
+	 * instances for each thread.
+	 *
+	 * @param template
+	 *            The template that creates the instances.
+	 */
+	public MixinPool(MixinTemplate<T> template) {
+		this(template, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a pool.
+	 *
+	 * @param template
+	 *            The template that creates the instances.
+	 * @param capacity
+	 *            The maximum number of idle instances kept by each thread.
+	 */
+	public MixinPool(MixinTemplate<T> template, int capacity) {
+		if (template == null) {
+			throw new IllegalArgumentException("The template must not be null.");
+		}
+
+		if (capacity < 0) {
+			throw new IllegalArgumentException("The capacity must not be negative.");
+		}
+
+		this.template = template;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @return The template that creates the instances.
+	 */
+	public MixinTemplate<T> getTemplate() {
+		return template;
+	}
+
+	/**
+	 * Obtains an instance bound to the given instances. An idle instance of
+	 * the current thread is rebound, if available, or a new instance is
+	 * created.
+	 *
+	 * @param instances
+	 *            One instance for each class mixed in the template, in order.
+	 * @return The instance of the interface.
+	 * @throws IllegalArgumentException
+	 *             If the instances do not match the mixed classes.
+	 * @see MixinTemplate#bind(Object...)
+	 */
+	public T acquire(Object... instances) {
+		ArrayDeque<T> pool = idle.get();
+		T instance = pool.pollLast();
+		if (instance == null) {
+			return template.bind(instances);
+		}
+
+		try {
+			template.getRebindable(instance).rebind(instances);
+		} catch (RuntimeException e) {
+			// still reset and can be used by the next acquire
+			pool.addLast(instance);
+			throw e;
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Resets the instance and keeps it for the current thread, unless the
+	 * thread already has enough idle instances.
+	 *
+	 * @param instance
+	 *            An instance obtained from {@link #acquire(Object...)}.
+	 * @throws IllegalArgumentException
+	 *             If the instance was not created by the template.
+	 * @throws IllegalStateException
+	 *             If the instance was already released.
+	 */
+	public void release(T instance) {
+		Rebindable rebindable = template.getRebindable(instance);
+		if (rebindable == null) {
+			String message = String.format("The instance was not created by the template. Cannot release %s.", instance == null ? null : instance.getClass().getName());
+			throw new IllegalArgumentException(message);
+		}
+
+		if (!rebindable.isBound()) {
+			throw new IllegalStateException("The instance was already released.");
+		}
+
+		rebindable.reset();
+
+		ArrayDeque<T> pool = idle.get();
+		if (pool.size() < capacity) {
+			pool.addLast(instance);
+		}
+	}
+
+	/**
+	 * Discards the idle instances of the current thread.
+	 */
+	public void clear() {
+		idle.remove();
+	}
+
+}
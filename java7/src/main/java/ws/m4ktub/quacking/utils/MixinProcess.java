@@ -2,6 +2,7 @@ package ws.m4ktub.quacking.utils;
 
 import ws.m4ktub.quacking.DuckWing;
 import ws.m4ktub.quacking.Mixed;
+import ws.m4ktub.quacking.Mixer;
 import ws.m4ktub.quacking.Mixin;
 
 class MixinProcess implements Mixing {
@@ -19,12 +20,23 @@ class MixinProcess implements Mixing {
 		return mixin;
 	}
 
+	@Override
+	public Mixin build(Class<?>... kinds) {
+		return mixin.freeze(kinds);
+	}
+
 	@Override
 	public Mixing mix(Object instance) {
 		current = mixin.mix(instance);
 		return this;
 	}
 
+	@Override
+	public Mixing mixLazy(Class<?> type, Mixer factory) {
+		current = mixin.mixLazy(type, factory);
+		return this;
+	}
+
 	@Override
 	public Mixing preferring(Class<?> kind) {
 		current.preferring(kind);
@@ -37,6 +49,18 @@ class MixinProcess implements Mixing {
 		return this;
 	}
 
+	@Override
+	public Mixing around(String callName, DuckWing... handlers) {
+		current.around(callName, handlers);
+		return this;
+	}
+
+	@Override
+	public Mixing around(DuckWing handler) {
+		mixin.around(handler);
+		return this;
+	}
+
 	@Override
 	public Mixing curry(String callName, Class<?>[] types, Object[] args) {
 		current.curry(callName, types, args);
@@ -54,4 +78,9 @@ class MixinProcess implements Mixing {
 		return mixin.as(kind);
 	}
 
+	@Override
+	public <T> T as(Class<?> kind, Class<?>... kinds) {
+		return mixin.as(kind, kinds);
+	}
+
 }
@@ -2,6 +2,7 @@ package ws.m4ktub.quacking.utils;
 
 import ws.m4ktub.quacking.DuckWing;
 import ws.m4ktub.quacking.Mixed;
+import ws.m4ktub.quacking.Mixer;
 import ws.m4ktub.quacking.Mixin;
 
 /**
@@ -26,6 +27,28 @@ public interface Mixing {
 	 */
 	<T> T as(Class<T> kind);
 
+	/**
+	 * Equivalent to {@link #get()}.{@link Mixin#as(Class, Class...)
+	 * as(kind, kinds)}.
+	 * 
+	 * @param kind
+	 *            The first interface to convert to.
+	 * @param kinds
+	 *            The other interfaces to convert to.
+	 * @return A proxy instance of all the specified kinds.
+	 */
+	<T> T as(Class<?> kind, Class<?>... kinds);
+
+	/**
+	 * Equivalent to {@link #get()}.{@link Mixin#freeze(Class...)
+	 * freeze(kinds)}.
+	 * 
+	 * @param kinds
+	 *            The interfaces to resolve immediately.
+	 * @return An immutable snapshot of the mixin in it's current state.
+	 */
+	Mixin build(Class<?>... kinds);
+
 	/**
 	 * Mixes a new instance. That mixed instance will be the target of any
 	 * configuration.
@@ -38,6 +61,20 @@ public interface Mixing {
 	 */
 	Mixing mix(Object instance);
 
+	/**
+	 * Mixes an instance that is only created when first needed. That mixed
+	 * instance will be the target of any configuration.
+	 * 
+	 * @param type
+	 *            The class of the instance.
+	 * @param factory
+	 *            The factory of the instance.
+	 * @return The same on-going mixing.
+	 * 
+	 * @see Mixin#mixLazy(Class, Mixer)
+	 */
+	Mixing mixLazy(Class<?> type, Mixer factory);
+
 	/**
 	 * @see Mixed#preferring(Class)
 	 */
@@ -48,6 +85,16 @@ public interface Mixing {
 	 */
 	Mixing around(String callName, DuckWing handler);
 
+	/**
+	 * @see Mixed#around(String, DuckWing...)
+	 */
+	Mixing around(String callName, DuckWing... handlers);
+
+	/**
+	 * @see Mixin#around(DuckWing)
+	 */
+	Mixing around(DuckWing handler);
+
 	/**
 	 * @see Mixed#curry(String, Class[], Object[])
 	 */
@@ -6,6 +6,7 @@ import static org.junit.Assert.*;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.net.URL;
 import java.util.List;
 
@@ -83,4 +84,23 @@ public class ClassLoaderTest {
 	    duckMyListClass.getMethod("test", new Class[0]).invoke(null, new Object[0]);
 	}
 
+	@Test
+	public void unloading() throws Exception {
+		WeakReference<ClassLoader> reference = runCustom();
+		for (int i = 0; i < 100 && reference.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+
+		// proxy classes and resolutions do not keep the class loader
+		assertThat(reference.get(), nullValue());
+	}
+
+	private WeakReference<ClassLoader> runCustom() throws Exception {
+		CustomClassLoader loader = new CustomClassLoader(ClassLoaderTest.class.getClassLoader());
+		Class<?> duckMyListClass = loader.loadClass(CustomTest.class.getName());
+		duckMyListClass.getMethod("test", new Class[0]).invoke(null, new Object[0]);
+		return new WeakReference<ClassLoader>(loader);
+	}
+
 }
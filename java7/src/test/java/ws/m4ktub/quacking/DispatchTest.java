@@ -0,0 +1,276 @@
+package ws.m4ktub.quacking;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class DispatchTest {
+
+	public interface Greeter {
+
+		String greet(String name);
+
+		String farewell(String name);
+
+	}
+
+	public static class Hello {
+		public String greet(String name) {
+			return "Hello " + name;
+		}
+
+		public String hi(String name) {
+			return "Hi " + name;
+		}
+	}
+
+	public interface Describer {
+
+		String describe(Object value);
+
+	}
+
+	public static class Overloaded {
+		public String describe(String value) {
+			return "string";
+		}
+
+		public String describe(Integer value) {
+			return "integer";
+		}
+	}
+
+	public static class Bounded {
+		public String describe(String value) {
+			return "string";
+		}
+
+		public <N extends Number> String describe(N value) {
+			return "number";
+		}
+
+		public String describe(Integer value) {
+			return "integer";
+		}
+	}
+
+	public interface Repeater {
+
+		String repeat(String value, int times);
+
+	}
+
+	public static class LooseRepeater {
+		public String repeat(Object value, Object times) {
+			return "object";
+		}
+
+		public String repeat(CharSequence value, Integer times) {
+			return "sequence";
+		}
+	}
+
+	public static class Bye {
+		public String farewell(String name) {
+			return "Bye " + name;
+		}
+	}
+
+	@Test
+	public void tableReused() {
+		Mixin mixin = new Mixin();
+		mixin.mix(new Hello());
+		mixin.mix(new Bye());
+
+		DispatchTable table = mixin.getDispatchTable(Greeter.class);
+		Greeter greeter = mixin.as(Greeter.class);
+
+		assertEquals("Hello duck", greeter.greet("duck"));
+		assertEquals("Bye duck", greeter.farewell("duck"));
+		assertSame(table, mixin.getDispatchTable(Greeter.class));
+	}
+
+	@Test
+	public void tableInvalidated() {
+		Mixin mixin = new Mixin();
+		Mixed hello = mixin.mix(new Hello());
+
+		DispatchTable table = mixin.getDispatchTable(Greeter.class);
+		Greeter greeter = mixin.as(Greeter.class);
+		assertEquals("Hello duck", greeter.greet("duck"));
+
+		// configuration after the first call is still honored
+		hello.rename("greet", "hi");
+		assertEquals("Hi duck", greeter.greet("duck"));
+		assertNotSame(table, mixin.getDispatchTable(Greeter.class));
+
+		// and so are new instances
+		try {
+			greeter.farewell("duck");
+			fail("Method should not be supported.");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+
+		mixin.mix(new Bye());
+		assertEquals("Bye duck", greeter.farewell("duck"));
+	}
+
+	@Test
+	public void layoutShared() {
+		Mixin first = new Mixin();
+		first.mix(new Hello());
+
+		Mixin second = new Mixin();
+		second.mix(new Bye());
+
+		// the methods only depend on the interface
+		assertSame(first.getDispatchTable(Greeter.class).getMethods(), second.getDispatchTable(Greeter.class).getMethods());
+		assertEquals("Hello duck", first.as(Greeter.class).greet("duck"));
+		assertEquals("Bye duck", second.as(Greeter.class).farewell("duck"));
+	}
+
+	@Test
+	public void slotsResolved() {
+		Mixin mixin = new Mixin();
+		mixin.mix(new Hello());
+
+		DispatchTable table = mixin.getDispatchTable(Greeter.class);
+		for (int i = 0; i < table.getMethods().size(); i++) {
+			String name = table.getMethods().get(i).getName();
+
+			if (name.equals("greet")) {
+				assertNotNull(table.getSlot(i).getInvocation());
+			} else if (name.equals("farewell")) {
+				assertNull(table.getSlot(i).getInvocation());
+			}
+		}
+	}
+
+	@Test
+	public void frozenSnapshot() {
+		Mixin mixin = new Mixin();
+		Mixed hello = mixin.mix(new Hello());
+
+		Mixin frozen = mixin.freeze(Greeter.class);
+		DispatchTable table = frozen.getDispatchTable(Greeter.class);
+
+		// the original mixin is still configurable
+		hello.rename("greet", "hi");
+		mixin.mix(new Bye());
+		assertEquals("Hi duck", mixin.as(Greeter.class).greet("duck"));
+
+		// but the snapshot is not affected
+		Greeter greeter = frozen.as(Greeter.class);
+		assertEquals("Hello duck", greeter.greet("duck"));
+		assertSame(table, frozen.getDispatchTable(Greeter.class));
+	}
+
+	@Test
+	public void frozenRejectsChanges() {
+		Mixin mixin = new Mixin();
+		mixin.mix(new Hello());
+
+		Mixin frozen = mixin.freeze();
+		assertTrue(frozen.isFrozen());
+		assertFalse(mixin.isFrozen());
+
+		try {
+			frozen.mix(new Bye());
+			fail("Frozen mixin should not accept instances.");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		Mixed mixed = frozen.getImplementations().get(0);
+		assertTrue(mixed.isFrozen());
+
+		try {
+			mixed.rename("greet", "hi");
+			fail("Frozen mixed instance should not be configurable.");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		try {
+			mixed.around("greet", new DuckWing.Default());
+			fail("Frozen mixed instance should not be configurable.");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void inlineCache() {
+		Mixin mixin = new Mixin();
+		mixin.mix(new Overloaded());
+		mixin.setInlineCacheSize(1);
+
+		Describer describer = mixin.as(Describer.class);
+		DispatchTable.MultiDispatchSlot slot = (DispatchTable.MultiDispatchSlot) getSlot(mixin.getDispatchTable(Describer.class), "describe");
+
+		assertEquals("string", describer.describe("a"));
+		assertEquals("string", describer.describe("b"));
+		assertFalse(slot.isMegamorphic());
+
+		// a second combination of classes exceeds the inline cache
+		assertEquals("integer", describer.describe(1));
+		assertTrue(slot.isMegamorphic());
+		assertEquals("string", describer.describe("c"));
+		assertEquals("integer", describer.describe(2));
+	}
+
+	@Test
+	public void closestOverload() {
+		Mixin mixin = new Mixin();
+		mixin.mix(new Bounded());
+
+		Describer describer = mixin.as(Describer.class);
+		assertEquals("integer", describer.describe(1));
+		assertEquals("number", describer.describe(1L));
+		assertEquals("string", describer.describe("a"));
+	}
+
+	@Test
+	public void finalParameters() {
+		Mixin mixin = new Mixin();
+		mixin.mix(new LooseRepeater());
+
+		// strings and primitives cannot have more specific arguments
+		DispatchTable.Slot slot = getSlot(mixin.getDispatchTable(Repeater.class), "repeat");
+		assertTrue(slot instanceof DispatchTable.ResolvedSlot);
+		assertEquals("sequence", mixin.as(Repeater.class).repeat("quack", 2));
+	}
+
+	@Test
+	public void staticDispatch() {
+		Mixin mixin = new Mixin();
+		Mixed overloaded = mixin.mix(new Overloaded());
+
+		Describer describer = mixin.as(Describer.class);
+		assertEquals("string", describer.describe("a"));
+
+		// no overload accepts the declared object type
+		overloaded.staticDispatch();
+		assertTrue(overloaded.isStaticDispatch());
+		assertTrue(getSlot(mixin.getDispatchTable(Describer.class), "describe") instanceof DispatchTable.UnsupportedSlot);
+
+		try {
+			describer.describe("a");
+			fail("Method should not be supported.");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	private static DispatchTable.Slot getSlot(DispatchTable table, String name) {
+		for (int i = 0; i < table.getMethods().size(); i++) {
+			if (table.getMethods().get(i).getName().equals(name)) {
+				return table.getSlot(i);
+			}
+		}
+
+		throw new AssertionError(name);
+	}
+
+}
@@ -46,6 +46,12 @@ public class DuckTest {
 		}
 	}
 
+	class SickBird {
+		public String quack() {
+			throw new IllegalStateException("cough");
+		}
+	}
+
 	/**
 	 * The <tt>ShyBird</tt> does not have public methods. If the method is not
 	 * public then it is not accessible, by default, to the mixin invocation
@@ -95,6 +101,13 @@ public class DuckTest {
 		assertThat(bird.as(Duck.class).quack(), is("quack"));
 	}
 
+	@Test(expected = IllegalStateException.class)
+	public void asFailure() {
+		Mixin bird = new Mixin();
+		bird.mix(new SickBird());
+		bird.as(Duck.class).quack();
+	}
+
 	@Test(expected = IllegalArgumentException.class)
 	public void asNullError() {
 		Mixin bird = new Mixin();
@@ -133,6 +146,45 @@ public class DuckTest {
 		assertThat(quacker.quack(), is("quack"));
 	}
 
+	@Test
+	public void asReused() {
+		Mixin bird = new Mixin();
+		bird.mix(new Bird());
+		Duck duck = bird.as(Duck.class);
+		assertSame(duck, bird.as(Duck.class));
+
+		Quacker quacker = ((DuckType) duck).as(Quacker.class);
+		assertSame(quacker, bird.as(Quacker.class));
+
+		// mixing creates new instances
+		bird.mix(new SickBird()).preferring(Quacker.class);
+		assertNotSame(quacker, bird.as(Quacker.class));
+	}
+
+	@Test
+	public void asMany() {
+		Mixin bird = new Mixin();
+		bird.mix(new Bird());
+
+		Object duck = bird.as(Duck.class, Quacker.class, Duck.class);
+		assertTrue(duck instanceof Duck);
+		assertTrue(duck instanceof Quacker);
+		assertThat(((Quacker) duck).quack(), is("quack"));
+		assertThat(((Duck) duck).quack(), is("quack"));
+
+		// cached for the set of interfaces
+		assertSame(duck, bird.as(Quacker.class, Duck.class));
+		assertSame(duck, ((DuckType) duck).as(Duck.class, Quacker.class));
+		assertNotSame(duck, bird.as(Duck.class));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void asManyNullError() {
+		Mixin bird = new Mixin();
+		bird.mix(new Bird());
+		bird.as(Duck.class, (Class<?>) null);
+	}
+
 	@Test
 	public void asObject() {
 		Bird birdImpl = new Bird();
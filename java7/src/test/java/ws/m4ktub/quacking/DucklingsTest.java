@@ -3,6 +3,8 @@ package ws.m4ktub.quacking;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.lang.ref.WeakReference;
+
 import org.junit.Test;
 
 public class DucklingsTest {
@@ -96,4 +98,93 @@ public class DucklingsTest {
 		assertThat(mixin.as(DonaldDuckQuartet.class).red(), equalTo("fethry"));
 	}
 
+	@Test
+	public void weak() throws Exception {
+		Mixin mixin = new Mixin();
+		WeakReference<Object> reference = mixWeakHuey(mixin);
+		mixin.mix(new Fethry());
+
+		DonaldDuckQuartet quartet = mixin.as(DonaldDuckQuartet.class);
+		assertThat(quartet.red(), equalTo("huey"));
+
+		collect(reference);
+
+		// the call finds huey collected and goes to the next duckling
+		assertThat(quartet.red(), equalTo("fethry"));
+		assertThat(mixin.getImplementations().size(), equalTo(1));
+	}
+
+	@Test
+	public void weakPruned() throws Exception {
+		Mixin mixin = new Mixin();
+		WeakReference<Object> reference = mixWeakHuey(mixin);
+		assertTrue(mixin.is(HueyDuck.class));
+
+		collect(reference);
+
+		// collected instances are ignored before being queued
+		assertFalse(mixin.is(HueyDuck.class));
+
+		for (int i = 0; i < 100 && !mixin.getImplementations().isEmpty(); i++) {
+			Thread.sleep(10);
+			mixin.prune();
+		}
+
+		assertTrue(mixin.getImplementations().isEmpty());
+	}
+
+	@Test
+	public void weakFrozen() throws Exception {
+		Mixin mixin = new Mixin();
+		WeakReference<Object> reference = mixWeakHuey(mixin);
+		mixin.mix(new Fethry());
+
+		Mixin frozen = mixin.freeze(DonaldDuckQuartet.class);
+		DonaldDuckQuartet quartet = frozen.as(DonaldDuckQuartet.class);
+		assertThat(quartet.red(), equalTo("huey"));
+
+		collect(reference);
+
+		// the single resolution is replaced once and then reused
+		assertThat(quartet.red(), equalTo("fethry"));
+		DispatchTable table = frozen.getDispatchTable(DonaldDuckQuartet.class);
+		assertTrue(frozen.isCurrent(table));
+		assertThat(quartet.red(), equalTo("fethry"));
+		assertSame(table, frozen.getDispatchTable(DonaldDuckQuartet.class));
+	}
+
+	@Test
+	public void weakGenerated() throws Exception {
+		Mixin mixin = new Mixin(DuckEngine.GENERATED);
+		mixin.setPassThrough(true);
+		WeakReference<Object> reference = mixWeakHuey(mixin);
+		mixin.mix(new Fethry());
+
+		HueyDuck duck = mixin.as(HueyDuck.class);
+		assertThat(duck.red(), equalTo("huey"));
+
+		// the generated instance does not keep huey
+		collect(reference);
+		assertThat(duck.red(), equalTo("fethry"));
+	}
+
+	interface HueyDuck {
+		String red();
+	}
+
+	private WeakReference<Object> mixWeakHuey(Mixin mixin) {
+		Huey huey = new Huey();
+		mixin.mixWeak(huey);
+		return new WeakReference<Object>(huey);
+	}
+
+	private static void collect(WeakReference<?> reference) throws InterruptedException {
+		for (int i = 0; i < 100 && reference.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+
+		assertThat(reference.get(), nullValue());
+	}
+
 }
@@ -0,0 +1,333 @@
+package ws.m4ktub.quacking;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+
+import org.junit.Test;
+
+/**
+ * Test the generated engine, both the direct calls to the mixed instances and
+ * the calls that still need to be resolved by the mixin.
+ */
+public class EngineTest {
+
+	public interface Counter {
+		int next();
+
+		long add(long value);
+
+		Integer boxed();
+
+		int unboxed();
+
+		void reset();
+
+		Void nothing();
+	}
+
+	public interface Scaler {
+		int scale(int factor);
+
+		Integer shift(Integer by);
+
+		double ratio(double value, int parts);
+	}
+
+	interface Hidden {
+		int next();
+	}
+
+	public interface Listener {
+		String hear(Object sound);
+	}
+
+	public interface Thrower {
+		void fail();
+	}
+
+	public static class Counting {
+		private int count;
+
+		public int next() {
+			return ++count;
+		}
+
+		public long add(long value) {
+			return count += value;
+		}
+
+		public int boxed() {
+			return count;
+		}
+
+		public Integer unboxed() {
+			return count == 0 ? null : count;
+		}
+
+		public int reset() {
+			int previous = count;
+			count = 0;
+			return previous;
+		}
+
+		public String nothing() {
+			return "nothing";
+		}
+	}
+
+	public static class Scaling {
+		private int value = 2;
+
+		public Integer scale(Integer factor) {
+			return value *= factor;
+		}
+
+		public int shift(int by) {
+			return value += by;
+		}
+
+		public double ratio(double value, int parts) {
+			return value / parts;
+		}
+	}
+
+	public static class Resetting {
+		public void reset() {
+		}
+	}
+
+	public static class Hearing {
+		public String hear(String sound) {
+			return "string " + sound;
+		}
+
+		public String hear(Integer sound) {
+			return "integer " + sound;
+		}
+	}
+
+	public static class Echo implements Listener {
+		@Override
+		public String hear(Object sound) {
+			return "echo " + sound;
+		}
+	}
+
+	public static class EchoDuck extends Echo implements DuckType {
+		@Override
+		public boolean is(Class<?> kind) {
+			return kind.isInstance(this);
+		}
+
+		@Override
+		public <T> T as(Class<T> kind) {
+			return kind.cast(this);
+		}
+
+		@Override
+		public <T> T as(Class<?> kind, Class<?>... kinds) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	public static class Failing {
+		public void fail() {
+			throw new IllegalStateException("failed");
+		}
+	}
+
+	@Test
+	public void directCalls() {
+		Mixin mixin = new Mixin(DuckEngine.GENERATED);
+		mixin.mix(new Counting());
+
+		Counter counter = mixin.as(Counter.class);
+		assertFalse(Proxy.isProxyClass(counter.getClass()));
+		assertThat(counter.next(), equalTo(1));
+		assertThat(counter.add(2L), equalTo(3L));
+		assertThat(counter.boxed(), equalTo(3));
+		assertThat(counter.unboxed(), equalTo(3));
+		assertThat(counter.nothing(), nullValue());
+
+		counter.reset();
+		assertThat(counter.next(), equalTo(1));
+	}
+
+	@Test
+	public void directCallsConvertArguments() {
+		Mixin mixin = new Mixin(DuckEngine.GENERATED);
+		mixin.mix(new Scaling());
+
+		Scaler scaler = mixin.as(Scaler.class);
+		assertFalse(Proxy.isProxyClass(scaler.getClass()));
+		assertThat(scaler.scale(3), equalTo(6));
+		assertThat(scaler.shift(4), equalTo(10));
+		assertThat(scaler.ratio(3.0, 2), equalTo(1.5));
+	}
+
+	@Test
+	public void directCallsOfManyInterfaces() {
+		Mixin mixin = new Mixin(DuckEngine.GENERATED);
+		mixin.mix(new Counting());
+		mixin.mix(new Scaling());
+
+		Counter counter = mixin.as(Counter.class, Scaler.class);
+		assertFalse(Proxy.isProxyClass(counter.getClass()));
+		assertThat(counter.next(), equalTo(1));
+		assertThat(((Scaler) counter).scale(3), equalTo(6));
+		assertSame(counter, mixin.as(Scaler.class, Counter.class));
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void directCallUnboxingNull() {
+		Mixin mixin = new Mixin(DuckEngine.GENERATED);
+		mixin.mix(new Counting());
+		mixin.as(Counter.class).unboxed();
+	}
+
+	@Test
+	public void sameLayoutSameClass() {
+		Mixin first = new Mixin(DuckEngine.GENERATED);
+		first.mix(new Counting());
+
+		Mixin second = new Mixin(DuckEngine.GENERATED);
+		second.mix(new Counting());
+
+		Mixin third = new Mixin(DuckEngine.GENERATED);
+		third.mix(new Resetting());
+		third.mix(new Counting());
+
+		Class<?> firstClass = first.as(Counter.class).getClass();
+		assertSame(firstClass, second.as(Counter.class).getClass());
+		assertNotSame(firstClass, third.as(Counter.class).getClass());
+	}
+
+	@Test
+	public void fieldsNotExposed() {
+		Mixin mixin = new Mixin(DuckEngine.GENERATED);
+		mixin.mix(new Resetting());
+		mixin.mix(new Hearing());
+
+		Class<?> generated = mixin.as(Counter.class, Listener.class).getClass();
+		assertFalse(Proxy.isProxyClass(generated));
+		for (Field field : generated.getDeclaredFields()) {
+			assertTrue(field.getName(), Modifier.isPrivate(field.getModifiers()));
+			assertTrue(field.getName(), Modifier.isFinal(field.getModifiers()));
+		}
+	}
+
+	@Test
+	public void preferredInstance() {
+		Mixin mixin = new Mixin(DuckEngine.GENERATED);
+		Counting preferred = new Counting();
+		mixin.mix(new Counting());
+		mixin.mix(preferred).preferring(Counter.class);
+
+		Counter counter = mixin.as(Counter.class);
+		counter.next();
+		counter.next();
+		assertThat(preferred.boxed(), equalTo(2));
+	}
+
+	@Test
+	public void multiDispatchThroughMixin() {
+		Mixin mixin = new Mixin(DuckEngine.GENERATED);
+		mixin.mix(new Hearing());
+
+		Listener listener = mixin.as(Listener.class);
+		assertThat(listener.hear("quack"), equalTo("string quack"));
+		assertThat(listener.hear(42), equalTo("integer 42"));
+	}
+
+	@Test
+	public void configurationThroughMixin() {
+		Mixin mixin = new Mixin(DuckEngine.GENERATED);
+		mixin.mix(new Counting()).rename("unboxed", "boxed");
+
+		assertThat(mixin.as(Counter.class).unboxed(), equalTo(0));
+	}
+
+	@Test
+	public void objectAndDuckTypeMethods() {
+		Counting counting = new Counting();
+		Mixin mixin = new Mixin(DuckEngine.GENERATED);
+		mixin.mix(counting);
+
+		Counter counter = mixin.as(Counter.class);
+		assertThat(counter.hashCode(), equalTo(counting.hashCode()));
+		assertThat(counter.toString(), equalTo(counting.toString()));
+		assertTrue(counter.equals(counter));
+		assertTrue(((DuckType) counter).is(Counter.class));
+		assertThat(((DuckType) counter).as(Hidden.class).next(), equalTo(1));
+	}
+
+	@Test
+	public void hiddenInterfaceUsesProxy() {
+		Mixin mixin = new Mixin(DuckEngine.GENERATED);
+		mixin.mix(new Counting());
+
+		Hidden hidden = mixin.as(Hidden.class);
+		assertTrue(Proxy.isProxyClass(hidden.getClass()));
+		assertThat(hidden.next(), equalTo(1));
+	}
+
+	@Test
+	public void passThrough() {
+		Mixin mixin = new Mixin();
+		mixin.setPassThrough(true);
+		mixin.mix(new Echo());
+
+		Listener listener = mixin.as(Listener.class);
+		assertFalse(Proxy.isProxyClass(listener.getClass()));
+		assertThat(listener.hear("quack"), equalTo("echo quack"));
+		assertTrue(((DuckType) listener).is(Listener.class));
+
+		// another instance takes precedence
+		mixin.mix(new Hearing()).preferring(Listener.class);
+		listener = mixin.as(Listener.class);
+		assertTrue(Proxy.isProxyClass(listener.getClass()));
+		assertThat(listener.hear("quack"), equalTo("string quack"));
+	}
+
+	@Test
+	public void passThroughInstance() {
+		EchoDuck echo = new EchoDuck();
+		Mixin mixin = new Mixin();
+		mixin.setPassThrough(true);
+		mixin.mix(echo);
+
+		assertSame(echo, mixin.as(Listener.class));
+
+		mixin.setPassThrough(false);
+		assertTrue(Proxy.isProxyClass(mixin.as(Listener.class).getClass()));
+
+		mixin.setPassThrough(true);
+		mixin.mix(new Object());
+		assertSame(echo, mixin.as(Listener.class));
+
+		// configured instances go through the mixin
+		Mixin configured = new Mixin();
+		configured.setPassThrough(true);
+		configured.mix(echo).rename("hear", "hear");
+		assertTrue(Proxy.isProxyClass(configured.as(Listener.class).getClass()));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void directCallExceptions() {
+		Mixin mixin = new Mixin(DuckEngine.GENERATED);
+		mixin.mix(new Failing());
+		mixin.as(Thrower.class).fail();
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void unsupportedMethod() {
+		Mixin mixin = new Mixin(DuckEngine.GENERATED);
+		mixin.mix(new Resetting());
+		mixin.as(Counter.class).next();
+	}
+
+}
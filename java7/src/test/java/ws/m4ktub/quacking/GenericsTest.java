@@ -3,10 +3,16 @@ package ws.m4ktub.quacking;
 import static org.junit.Assert.*;
 
 import java.io.Closeable;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 
 import org.junit.Test;
 
+import ws.m4ktub.quacking.helpers.Reflections;
+
 public class GenericsTest {
 
 	public interface Pitch {
@@ -117,6 +123,91 @@ public class GenericsTest {
 		}
 	}
 
+	public interface Names {
+		List<String> names();
+	}
+
+	public interface Maximum {
+		<X extends Comparable<X>> X max(X a, X b);
+	}
+
+	class ComparableMaximum {
+		public <X extends Comparable<X>> X max(X a, X b) {
+			return a.compareTo(b) < 0 ? b : a;
+		}
+	}
+
+	public interface Counts {
+		List<? extends Number> counts();
+	}
+
+	class IntegerNames {
+		public List<Integer> names() {
+			return Arrays.asList(1);
+		}
+	}
+
+	class StringNames {
+		public ArrayList<String> names() {
+			return new ArrayList<String>(Arrays.asList("quack"));
+		}
+
+		public List<Integer> counts() {
+			return Arrays.asList(1, 2);
+		}
+	}
+
+	public interface QuackHearer {
+		String hear(Object quack);
+	}
+
+	class InterfaceHearer {
+		public String hear(Quack quack) {
+			return "a quack";
+		}
+
+		public String hear(Hearable quack) {
+			return "a hearable";
+		}
+	}
+
+	@Test
+	public void parameterizedReturnTypes() {
+		Mixin mixin = new Mixin();
+		mixin.mix(new IntegerNames());
+		mixin.mix(new StringNames());
+
+		assertTrue(mixin.is(Names.class));
+		assertTrue(mixin.is(Counts.class));
+		assertEquals(Arrays.asList("quack"), mixin.as(Names.class).names());
+		assertEquals(Arrays.asList(1, 2), mixin.as(Counts.class).counts());
+		assertTrue(Reflections.isTypeCompatible(Counts.class.getMethods()[0].getGenericReturnType(), ArrayList.class));
+		assertFalse(Reflections.isTypeCompatible(Names.class.getMethods()[0].getGenericReturnType(), Set.class));
+	}
+
+	@Test
+	public void recursiveBounds() {
+		Mixin mixin = new Mixin();
+		mixin.mix(new ComparableMaximum());
+
+		assertEquals(Integer.valueOf(2), mixin.as(Maximum.class).max(1, 2));
+
+		Type variable = Maximum.class.getMethods()[0].getGenericReturnType();
+		assertTrue(Reflections.isTypeCompatible(variable, Integer.class));
+		assertFalse(Reflections.isTypeCompatible(variable, Object.class));
+	}
+
+	@Test
+	public void interfaceParameters() {
+		Mixin mixin = new Mixin();
+		mixin.mix(new InterfaceHearer());
+
+		QuackHearer hearer = mixin.as(QuackHearer.class);
+		assertEquals("a quack", hearer.hear(new SimpleQuack("quack")));
+		assertEquals("a quack", hearer.hear(new SoftQuack("quack")));
+		assertEquals("a hearable", hearer.hear(new HearableQuack("quack")));
+	}
+
 	@Test
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public void returnTypeCheck() {
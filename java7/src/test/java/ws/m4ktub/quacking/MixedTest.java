@@ -2,10 +2,17 @@ package ws.m4ktub.quacking;
 
 import static org.junit.Assert.*;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Method;
+import java.lang.reflect.Type;
 
 import org.junit.Test;
 
+import ws.m4ktub.quacking.helpers.ClassMetadata;
+import ws.m4ktub.quacking.helpers.ClassMetadata.MethodInfo;
+import ws.m4ktub.quacking.helpers.Reflections;
+import ws.m4ktub.quacking.helpers.ResolutionCache;
+
 public class MixedTest {
 
 	public interface Calc {
@@ -70,6 +77,57 @@ public class MixedTest {
 		assertEquals(1, c.sub(2, 1));
 	}
 
+	class InfixCalc {
+		public int apply(int a, int op, int b) {
+			return new GenericCalc().binOp(op, a, b);
+		}
+	}
+
+	@Test
+	public void curryMiss() {
+		Mixin mixin = new Mixin();
+
+		Class<?>[] types = new Class<?>[] { null, Integer.TYPE };
+
+		mixin.mix(new InfixCalc()) //
+				.rename("add", "apply").curry("add", types, new Object[] { Invocation.CURRY_MISS, GenericCalc.OP_SUM }) //
+				.rename("sub", "apply").curry("sub", types, new Object[] { Invocation.CURRY_MISS, GenericCalc.OP_SUB }); //
+
+		Calc c = mixin.as(Calc.class);
+		assertEquals(3, c.add(1, 2));
+		assertEquals(3, c.sub(5, 2));
+		assertEquals(-3, c.sub(2, 5));
+	}
+
+	public interface Adder {
+
+		int add(int a, int b);
+
+		int add(int a);
+
+	}
+
+	@Test
+	public void curryOverloaded() {
+		Mixin mixin = new Mixin();
+
+		Class<?>[] types = new Class<?>[] { null, Integer.TYPE, null };
+
+		mixin.mix(new InfixCalc()) //
+				.rename("add", "apply").curry("add", types, new Object[] { Invocation.CURRY_MISS, GenericCalc.OP_SUM, Invocation.CURRY_MISS });
+
+		Adder adder = mixin.as(Adder.class);
+		assertEquals(3, adder.add(1, 2));
+
+		// the overload has fewer arguments than holes in the template
+		try {
+			adder.add(1);
+			fail("Method should not be supported.");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
 	@Test
 	public void arround() {
 		Mixin mixin = new Mixin();
@@ -101,4 +159,284 @@ public class MixedTest {
 		assertEquals(0, c.sub(2, 1));
 	}
 
+	@Test
+	public void arroundHandle() {
+		Mixin mixin = new Mixin();
+
+		DuckWing handler = new DuckHandleWing() {
+
+			@Override
+			public Object wrap(Object target, Method method, MethodHandle handle, Object[] args) throws Throwable {
+				Object result = handle.invokeExact(args);
+				return (int) result * 10;
+			}
+		};
+
+		mixin.mix(new SignsCalc()) //
+				.rename("add", "plus").around("add", handler);
+
+		Calc c = mixin.as(Calc.class);
+		assertEquals(30, c.add(1, 2));
+	}
+
+	@Test
+	public void arroundArity() {
+		Mixin mixin = new Mixin();
+
+		DuckWing handler = new DuckArityWing() {
+
+			@Override
+			public Object wrap2(Object target, Method method, MethodHandle handle, Object arg0, Object arg1) throws Throwable {
+				Object result = handle.invokeExact(arg0, arg1);
+				return (int) result * 10;
+			}
+
+			@Override
+			public Object wrap(Object target, Method method, MethodHandle handle, Object[] args) throws Throwable {
+				return handle.invokeExact(args);
+			}
+		};
+
+		mixin.mix(new SignsCalc()) //
+				.rename("add", "plus").around("add", handler) //
+				.rename("sub", "minus").around("sub", DuckArityWing.adapt(new DuckWing.Default()));
+
+		Calc c = mixin.as(Calc.class);
+		assertEquals(30, c.add(1, 2));
+		assertEquals(-1, c.sub(1, 2));
+	}
+
+	@Test
+	public void arroundStack() {
+		Mixin mixin = new Mixin();
+
+		DuckWing times = new DuckHandleWing() {
+
+			@Override
+			public Object wrap(Object target, Method method, MethodHandle handle, Object[] args) throws Throwable {
+				Object result = handle.invokeExact(args);
+				return (int) result * 10;
+			}
+		};
+
+		DuckWing plus = new DuckArityWing() {
+
+			@Override
+			public Object wrap2(Object target, Method method, MethodHandle handle, Object arg0, Object arg1) throws Throwable {
+				Object result = handle.invokeExact(arg0, arg1);
+				return (int) result + 1;
+			}
+
+			@Override
+			public Object wrap(Object target, Method method, MethodHandle handle, Object[] args) throws Throwable {
+				return handle.invokeExact(args);
+			}
+		};
+
+		final int[] calls = new int[1];
+		mixin.around(new DuckHandleWing() {
+
+			@Override
+			public Object wrap(Object target, Method method, MethodHandle handle, Object[] args) throws Throwable {
+				calls[0]++;
+				return handle.invokeExact(args);
+			}
+		});
+
+		mixin.mix(new SignsCalc()) //
+				.rename("add", "plus").around("add", times, plus, new DuckWing.Default()) //
+				.rename("sub", "minus");
+
+		Calc c = mixin.as(Calc.class);
+		assertEquals(40, c.add(1, 2));
+		assertEquals(-1, c.sub(1, 2));
+		assertEquals(2, calls[0]);
+
+		try {
+			new Mixed(new SignsCalc()).around("add", new DuckWing.Default(), times);
+			fail("Only handle wings can wrap other wings.");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void arroundWeak() {
+		Mixin mixin = new Mixin();
+
+		DuckWing times = new DuckHandleWing() {
+
+			@Override
+			public Object wrap(Object target, Method method, MethodHandle handle, Object[] args) throws Throwable {
+				Object result = handle.invokeExact(args);
+				return (int) result * 10;
+			}
+		};
+
+		DuckWing plus = new DuckArityWing() {
+
+			@Override
+			public Object wrap3(Object target, Method method, MethodHandle handle, Object arg0, Object arg1, Object arg2) throws Throwable {
+				Object result = handle.invokeExact(arg0, arg1, arg2);
+				return (int) result + 1;
+			}
+
+			@Override
+			public Object wrap(Object target, Method method, MethodHandle handle, Object[] args) throws Throwable {
+				return handle.invokeExact(args);
+			}
+		};
+
+		Class<?>[] types = new Class<?>[] { null, Integer.TYPE };
+		InfixCalc calc = new InfixCalc();
+
+		// the call paths are built once and receive the instance on each call
+		mixin.mixWeak(calc) //
+				.rename("add", "apply").curry("add", types, new Object[] { Invocation.CURRY_MISS, GenericCalc.OP_SUM }).around("add", times, plus) //
+				.rename("sub", "apply").curry("sub", types, new Object[] { Invocation.CURRY_MISS, GenericCalc.OP_SUB });
+
+		Calc c = mixin.as(Calc.class);
+		assertEquals(40, c.add(1, 2));
+		assertEquals(40, c.add(1, 2));
+		assertEquals(3, c.sub(5, 2));
+		assertEquals(3, calc.apply(1, GenericCalc.OP_SUM, 2));
+	}
+
+	@Test
+	public void invocationHandle() throws Throwable {
+		Method add = Calc.class.getMethod("add", int.class, int.class);
+		Mixed mixed = new Mixed(new SignsCalc()).rename("add", "plus");
+
+		Invocation invocation = Reflections.getMethodInvocation(mixed, add, new Object[] { 1, 2 });
+		assertNotNull(invocation.getHandle());
+		assertEquals(3, invocation.getHandle().invokeExact(new Object[] { 1, 2 }));
+		assertSame(invocation, Reflections.getMethodInvocation(mixed, add, new Object[] { 3, 4 }));
+	}
+
+	@Test
+	public void invocationCache() throws Throwable {
+		Method add = Calc.class.getMethod("add", int.class, int.class);
+		Method sub = Calc.class.getMethod("sub", int.class, int.class);
+		Mixed mixed = new Mixed(new SignsCalc()).rename("add", "plus").caching(1);
+
+		InvocationCache cache = mixed.getInvocationCache();
+		assertEquals(1, cache.getCapacity());
+
+		Invocation invocation = Reflections.getMethodInvocation(mixed, add, new Object[] { 1, 2 });
+		assertSame(invocation, Reflections.getMethodInvocation(mixed, add, new Object[] { 1, 2 }));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		// a different method competes for the single entry
+		mixed.rename("sub", "minus").caching(1);
+		cache = mixed.getInvocationCache();
+
+		Reflections.getMethodInvocation(mixed, add, new Object[] { 1, 2 });
+		Reflections.getMethodInvocation(mixed, add, new Object[] { 1, 2 });
+		Reflections.getMethodInvocation(mixed, sub, new Object[] { 1, 2 });
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.getEvictions());
+
+		// hits of evicted entries are still counted
+		assertEquals(1, cache.getHits());
+	}
+
+	@Test
+	public void sharedResolution() throws Throwable {
+		Method add = Calc.class.getMethod("add", int.class, int.class);
+		Class<?>[] types = add.getParameterTypes();
+
+		Mixed first = new Mixed(new SignsCalc()).rename("add", "plus");
+		Mixed second = new Mixed(new SignsCalc()).rename("add", "plus");
+
+		// primitive parameters are resolved once with the wrapper types
+		Invocation firstInvocation = Reflections.getStaticInvocation(first, add);
+		MethodBinding binding = ResolutionCache.get(SignsCalc.class, add, "plus", types, new Type[] { Integer.class, Integer.class });
+		assertNotNull(binding);
+
+		// the same resolution is bound to the other instance
+		Invocation secondInvocation = Reflections.getStaticInvocation(second, add);
+		assertSame(binding.getMethod(), secondInvocation.getMethod());
+		assertSame(first.getInstance(), firstInvocation.getTarget());
+		assertSame(second.getInstance(), secondInvocation.getTarget());
+		assertEquals(3, secondInvocation.getHandle().invokeExact(new Object[] { 1, 2 }));
+	}
+
+	@Test
+	public void sharedConfiguration() throws Throwable {
+		Object[] constants = new Object[] { 1 };
+		DuckWing wing = new DuckWing.Default();
+
+		Mixed first = new Mixed(new SignsCalc()).rename("add", "plus").curry("sub", null, constants).around("add", wing);
+		Mixed second = new Mixed(new SignsCalc()).around("add", wing).rename("add", "plus").curry("sub", null, constants);
+		Mixed other = new Mixed(new SignsCalc()).rename("add", "plus").curry("sub", null, new Object[] { new Object() });
+
+		// equal configurations are the same objects
+		assertSame(first.getConfigurationFor("add"), second.getConfigurationFor("add"));
+		assertSame(first.getConfigurationFor("sub"), second.getConfigurationFor("sub"));
+		assertSame(first.getConfigurationFor("sub").getCurryPlan(), second.getConfigurationFor("sub").getCurryPlan());
+		assertNotSame(first.getConfigurationFor("sub"), other.getConfigurationFor("sub"));
+
+		// configuring one instance does not change the other
+		second.rename("add", "minus");
+		assertEquals("plus", first.getConfigurationFor("add").getRename());
+		assertEquals("minus", second.getConfigurationFor("add").getRename());
+		assertSame(wing, second.getConfigurationFor("add").getAroundHandler());
+	}
+
+	@Test
+	public void frozenConfiguration() {
+		Mixin mixin = new Mixin();
+		Mixed mixed = mixin.mix(new SignsCalc()).rename("add", "plus");
+		Mixin frozen = mixin.freeze(Calc.class);
+
+		// configuring the source does not change the frozen copy
+		mixed.rename("add", "minus").rename("sub", "plus");
+		assertEquals(3, frozen.as(Calc.class).add(1, 2));
+		assertEquals(-1, mixin.as(Calc.class).add(1, 2));
+		assertEquals(3, mixin.as(Calc.class).sub(1, 2));
+	}
+
+	@Test
+	public void failedResolution() throws Throwable {
+		Method add = Calc.class.getMethod("add", int.class, int.class);
+		Mixed mixed = new Mixed(new GenericCalc());
+
+		assertNull(Reflections.getMethodInvocation(mixed, add, new Object[] { 1, 2 }));
+		assertNull(Reflections.getStaticInvocation(mixed, add));
+
+		Type[] argTypes = new Type[] { Integer.class, Integer.class };
+		assertSame(MethodBinding.NONE, ResolutionCache.get(GenericCalc.class, add, "add", add.getParameterTypes(), argTypes));
+	}
+
+	@Test
+	public void metadataIndex() throws Throwable {
+		Mixed mixed = new Mixed(new GenericCalc());
+		ClassMetadata metadata = mixed.getMetadata();
+		assertSame(metadata, ClassMetadata.of(GenericCalc.class));
+
+		assertEquals(1, metadata.getMethods("binOp").size());
+		assertEquals(1, metadata.getMethods("binOp", 3).size());
+		assertTrue(metadata.getMethods("binOp", 2).isEmpty());
+		assertTrue(metadata.getMethods("missing", 0).isEmpty());
+
+		Method binOp = GenericCalc.class.getMethod("binOp", int.class, int.class, int.class);
+		assertEquals(binOp, metadata.getMethod("binOp", binOp.getParameterTypes()).getMethod());
+		assertNull(metadata.getMethod("binOp", new Class<?>[] { int.class }));
+		assertFalse(metadata.getMethod("binOp", binOp.getParameterTypes()).isAccessible());
+	}
+
+	@Test
+	public void staticDispatchTypes() throws Throwable {
+		Method add = Calc.class.getMethod("add", int.class, int.class);
+		Mixed mixed = new Mixed(new SignsCalc());
+
+		// the interface method is indexed and its types computed once
+		MethodInfo info = ClassMetadata.of(Calc.class).getMethod(add);
+		assertSame(info, ClassMetadata.of(Calc.class).getMethod(add));
+		assertTrue(info.isExactDispatch());
+		assertArrayEquals(new Type[] { Integer.class, Integer.class }, info.getDispatchTypes());
+		assertSame(info.getDispatchTypes(), Reflections.getStaticDispatchParameterTypes(mixed, add));
+	}
+
 }
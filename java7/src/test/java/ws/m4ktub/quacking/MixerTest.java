@@ -2,6 +2,12 @@ package ws.m4ktub.quacking;
 
 import static org.junit.Assert.*;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Test;
 
 public class MixerTest {
@@ -55,6 +61,16 @@ public class MixerTest {
 		}
 	}
 	
+	public static class CountingMixer implements Mixer {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Object in(Mixin mixin) {
+			count.incrementAndGet();
+			return new Quacker();
+		}
+	}
+
 	@Test
 	public void other() {
 		Mixin mixin = new Mixin();
@@ -80,5 +96,72 @@ public class MixerTest {
 		
 		assertEquals("quack noise", mixin.as(Noise.class).produce());
 	}
-	
+
+	@Test
+	public void lazy() {
+		CountingMixer mixer = new CountingMixer();
+		Mixin mixin = new Mixin();
+		mixin.mixLazy(Quacker.class, mixer);
+		mixin.mix(new CollabMixer());
+
+		assertTrue(mixin.is(Duck.class));
+		Noise noise = mixin.as(Noise.class);
+		Duck duck = mixin.as(Duck.class);
+		mixin.freeze(Duck.class);
+		assertEquals(0, mixer.count.get());
+
+		assertEquals("quack noise", noise.produce());
+		assertEquals("quack", duck.speak());
+		assertEquals(1, mixer.count.get());
+	}
+
+	@Test
+	public void lazyGenerated() {
+		CountingMixer mixer = new CountingMixer();
+		Mixin mixin = new Mixin(DuckEngine.GENERATED);
+		mixin.mixLazy(Quacker.class, mixer);
+		mixin.setPassThrough(true);
+
+		Duck duck = mixin.as(Duck.class);
+		assertEquals(0, mixer.count.get());
+		assertEquals("quack", duck.speak());
+		assertEquals(1, mixer.count.get());
+	}
+
+	@Test
+	public void lazyConcurrent() throws Exception {
+		CountingMixer mixer = new CountingMixer();
+		Mixin mixin = new Mixin();
+		mixin.mixLazy(Quacker.class, mixer);
+		final Duck duck = mixin.as(Duck.class);
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Future<?>[] results = new Future<?>[8];
+			for (int i = 0; i < results.length; i++) {
+				results[i] = executor.submit(new Callable<String>() {
+					@Override
+					public String call() {
+						return duck.speak();
+					}
+				});
+			}
+
+			for (Future<?> result : results) {
+				assertEquals("quack", result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(1, mixer.count.get());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void lazyWrongType() {
+		Mixin mixin = new Mixin();
+		mixin.mixLazy(DuckNoise.class, new OtherMixer());
+		mixin.as(Noise.class).produce();
+	}
+
 }
@@ -383,6 +383,16 @@ public class ReadmeTest {
 		Assert.assertEquals("UTF-8", mixedRequest.getCharacterEncoding());
 	}
 	
+	@Test
+	public void template() throws Exception {
+		MixinTemplate<HttpServletRequest> template = new MixinTemplate<HttpServletRequest>(HttpServletRequest.class);
+		template.mix(ForceCharacterEncoding.class);
+		template.mix(HttpServletRequest.class);
+
+		HttpServletRequest mixedRequest = template.bind(new ForceCharacterEncoding("UTF-8"), getRequest());
+		Assert.assertEquals("UTF-8", mixedRequest.getCharacterEncoding());
+	}
+	
 	@Test
 	public void mixedRename() throws Exception {
 		Mixin mixin = new Mixin();
@@ -2,8 +2,13 @@ package ws.m4ktub.quacking;
 
 import static org.junit.Assert.*;
 
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+
 import org.junit.Test;
 
+import ws.m4ktub.quacking.helpers.ClassMetadata;
+import ws.m4ktub.quacking.helpers.MultiDispatcher;
 import ws.m4ktub.quacking.utils.Mixins;
 
 public class SubTypesTest {
@@ -319,5 +324,20 @@ public class SubTypesTest {
 		assertEquals(listener.hear(new StrangeQuack(), new SubsonicQuack()), "right subsonic hear strange quack subsonic quack");
 		assertEquals(listener.hear(new StrangeQuack(), new SonicQuack()), "regular hear strange quack sonic quack");
 	}
-	
+
+	@Test
+	public void testMultiDispatchMemoized() throws Exception {
+		MultiDispatcher dispatcher = ClassMetadata.of(StereoListener.class).getDispatcher("hear", 2);
+
+		Type[] sonicArgs = new Type[] { SonicQuack.class, SubsonicQuack.class };
+		Method sonic = dispatcher.select(sonicArgs);
+		assertEquals(StereoListener.class.getMethod("hear", SonicQuack.class, Object.class), sonic);
+		assertSame(sonic, dispatcher.select(sonicArgs));
+
+		Type[] strangeArgs = new Type[] { StrangeQuack.class, SubsonicQuack.class };
+		assertEquals(StereoListener.class.getMethod("hear", Object.class, SubsonicQuack.class), dispatcher.select(strangeArgs));
+		assertEquals(StereoListener.class.getMethod("hear", Object.class, Object.class), dispatcher.select(new Type[] { String.class, String.class }));
+		assertNull(ClassMetadata.of(StereoListener.class).getDispatcher("hear", 3).select(new Type[] { String.class, String.class, String.class }));
+	}
+
 }
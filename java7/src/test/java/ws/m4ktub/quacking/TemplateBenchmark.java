@@ -0,0 +1,113 @@
+package ws.m4ktub.quacking;
+
+import java.lang.management.ManagementFactory;
+
+import javax.servlet.http.HttpServletRequest;
+
+import ws.m4ktub.quacking.utils.MixinPool;
+import ws.m4ktub.quacking.utils.Mixins;
+
+/**
+ * Compares the cost of wrapping a request, and calling a couple of methods,
+ * with a hand written {@link javax.servlet.http.HttpServletRequestWrapper}, a
+ * mixin created for each request, a template bound for each request, and a
+ * template instance rebound from a pool.
+ * 
+ * <p>
+ * Run with the test classpath, for example with
+ * <tt>mvn test-compile exec:java -Dexec.mainClass=ws.m4ktub.quacking.TemplateBenchmark -Dexec.classpathScope=test</tt>.
+ */
+public class TemplateBenchmark {
+
+	private static final int WARMUP = 50000;
+	private static final int ITERATIONS = 200000;
+
+	private interface Scenario {
+		int request(HttpServletRequest request);
+	}
+
+	public static void main(String[] args) {
+		final ReadmeTest readme = new ReadmeTest();
+		final HttpServletRequest request = readme.getRequest();
+
+		final MixinTemplate<HttpServletRequest> template = new MixinTemplate<HttpServletRequest>(HttpServletRequest.class);
+		template.mix(ReadmeTest.ForceCharacterEncoding.class);
+		template.mix(HttpServletRequest.class);
+		final MixinPool<HttpServletRequest> pool = new MixinPool<HttpServletRequest>(template);
+
+		Scenario wrapper = new Scenario() {
+			@Override
+			public int request(HttpServletRequest request) {
+				return use(readme.new ForceCharacterEncodingWrapper(request, "UTF-8"));
+			}
+		};
+
+		Scenario mixin = new Scenario() {
+			@Override
+			public int request(HttpServletRequest request) {
+				Mixin mixin = Mixins.create(readme.new ForceCharacterEncoding("UTF-8"), request);
+				return use(mixin.as(HttpServletRequest.class));
+			}
+		};
+
+		Scenario bound = new Scenario() {
+			@Override
+			public int request(HttpServletRequest request) {
+				return use(template.bind(readme.new ForceCharacterEncoding("UTF-8"), request));
+			}
+		};
+
+		Scenario pooled = new Scenario() {
+			@Override
+			public int request(HttpServletRequest request) {
+				HttpServletRequest mixedRequest = pool.acquire(readme.new ForceCharacterEncoding("UTF-8"), request);
+				try {
+					return use(mixedRequest);
+				} finally {
+					pool.release(mixedRequest);
+				}
+			}
+		};
+
+		for (int round = 0; round < 3; round++) {
+			report("wrapper", wrapper, request);
+			report("mixin", mixin, request);
+			report("template", bound, request);
+			report("pool", pooled, request);
+		}
+	}
+
+	private static int use(HttpServletRequest request) {
+		String encoding = request.getCharacterEncoding();
+		String method = request.getMethod();
+		return encoding.length() + (method == null ? 0 : method.length());
+	}
+
+	private static void report(String name, Scenario scenario, HttpServletRequest request) {
+		int sink = 0;
+		for (int i = 0; i < WARMUP; i++) {
+			sink += scenario.request(request);
+		}
+
+		long allocated = getAllocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			sink += scenario.request(request);
+		}
+
+		long elapsed = System.nanoTime() - start;
+		allocated = getAllocatedBytes() - allocated;
+		System.out.printf("%-10s %8.1f ns/request %8.1f bytes/request (%d)%n", name, (double) elapsed / ITERATIONS, (double) allocated / ITERATIONS, sink);
+	}
+
+	private static long getAllocatedBytes() {
+		// only available in some virtual machines
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+
+		return 0;
+	}
+
+}
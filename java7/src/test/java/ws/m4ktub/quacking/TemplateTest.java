@@ -0,0 +1,196 @@
+package ws.m4ktub.quacking;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+
+/**
+ * Test templates, resolved once with the classes of the mixed instances, and
+ * bound to different instances.
+ */
+public class TemplateTest {
+
+	public interface Request {
+		String getEncoding();
+
+		String getPath();
+
+		int getLength(int extra);
+
+		String describe(Object value);
+	}
+
+	public static class RealRequest implements Request {
+		private final String path;
+
+		public RealRequest(String path) {
+			this.path = path;
+		}
+
+		@Override
+		public String getEncoding() {
+			return null;
+		}
+
+		@Override
+		public String getPath() {
+			return path;
+		}
+
+		@Override
+		public int getLength(int extra) {
+			return path.length() + extra;
+		}
+
+		@Override
+		public String describe(Object value) {
+			return "request " + value;
+		}
+	}
+
+	public static class Encoding {
+		private final String encoding;
+
+		public Encoding(String encoding) {
+			this.encoding = encoding;
+		}
+
+		public String getEncoding() {
+			return encoding;
+		}
+
+		public String encode(String prefix, String path) {
+			return prefix + encoding + path;
+		}
+
+		public String describe(String value) {
+			return "string " + value;
+		}
+	}
+
+	@Test
+	public void bind() {
+		MixinTemplate<Request> template = new MixinTemplate<Request>(Request.class);
+		template.mix(Encoding.class);
+		template.mix(Request.class);
+
+		Request first = template.bind(new Encoding("UTF-8"), new RealRequest("/a"));
+		Request second = template.bind(new Encoding("latin1"), new RealRequest("/bb"));
+
+		assertThat(first.getEncoding(), equalTo("UTF-8"));
+		assertThat(first.getPath(), equalTo("/a"));
+		assertThat(first.getLength(1), equalTo(3));
+		assertThat(second.getEncoding(), equalTo("latin1"));
+		assertThat(second.getPath(), equalTo("/bb"));
+		assertThat(second.getLength(1), equalTo(4));
+
+		assertSame(first.getClass(), second.getClass());
+		assertTrue(((DuckType) first).is(Request.class));
+	}
+
+	@Test
+	public void multiDispatch() {
+		MixinTemplate<Request> template = new MixinTemplate<Request>(Request.class);
+		template.mix(Encoding.class);
+		template.mix(Request.class);
+
+		Request request = template.bind(new Encoding("UTF-8"), new RealRequest("/a"));
+		assertThat(request.describe("value"), equalTo("string value"));
+		assertThat(request.describe(42), equalTo("request 42"));
+	}
+
+	@Test
+	public void configured() {
+		final int[] calls = new int[1];
+
+		MixinTemplate<Request> template = new MixinTemplate<Request>(Request.class);
+		template.mix(Encoding.class) //
+				.rename("getPath", "encode") //
+				.curry("getPath", new Class<?>[] { String.class, String.class }, new Object[] { "/", "/path" });
+		template.mix(Request.class).around("getLength", new DuckWing() {
+			@Override
+			public Object wrap(Object target, Method method, Object[] args) throws Throwable {
+				calls[0]++;
+				return method.invoke(target, args);
+			}
+		});
+
+		Request request = template.bind(new Encoding("UTF-8"), new RealRequest("/a"));
+		assertThat(request.getPath(), equalTo("/UTF-8/path"));
+		assertThat(request.getLength(0), equalTo(2));
+		assertThat(template.bind(new Encoding("UTF-8"), new RealRequest("/abc")).getLength(0), equalTo(4));
+		assertThat(calls[0], equalTo(2));
+	}
+
+	@Test
+	public void changed() {
+		MixinTemplate<Request> template = new MixinTemplate<Request>(Request.class);
+		Mixed encoding = template.mix(Encoding.class);
+		template.mix(Request.class);
+
+		Request before = template.bind(new Encoding("UTF-8"), new RealRequest("/a"));
+		encoding.rename("getPath", "getEncoding");
+		Request after = template.bind(new Encoding("UTF-8"), new RealRequest("/a"));
+
+		assertThat(before.getPath(), equalTo("/a"));
+		assertThat(after.getPath(), equalTo("UTF-8"));
+	}
+
+	@Test
+	public void rebind() {
+		MixinTemplate<Request> template = new MixinTemplate<Request>(Request.class);
+		template.mix(Encoding.class);
+		template.mix(Request.class);
+
+		Request request = template.bind(new Encoding("UTF-8"), new RealRequest("/a"));
+		assertThat(request.describe("value"), equalTo("string value"));
+
+		Rebindable rebindable = (Rebindable) request;
+		rebindable.reset();
+		assertFalse(rebindable.isBound());
+
+		rebindable.rebind(new Encoding("latin1"), new RealRequest("/bb"));
+		assertTrue(rebindable.isBound());
+		assertThat(request.getEncoding(), equalTo("latin1"));
+		assertThat(request.getLength(1), equalTo(4));
+		assertThat(request.describe(42), equalTo("request 42"));
+		assertTrue(template.isTemplateOf(request));
+	}
+
+	@Test
+	public void rebindChanged() {
+		MixinTemplate<Request> template = new MixinTemplate<Request>(Request.class);
+		Mixed encoding = template.mix(Encoding.class);
+		template.mix(Request.class);
+
+		Request request = template.bind(new Encoding("UTF-8"), new RealRequest("/a"));
+		encoding.rename("getPath", "getEncoding");
+		assertThat(request.getPath(), equalTo("/a"));
+
+		((Rebindable) request).rebind(new Encoding("UTF-8"), new RealRequest("/a"));
+		assertThat(request.getPath(), equalTo("UTF-8"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void resetCall() {
+		MixinTemplate<Request> template = new MixinTemplate<Request>(Request.class);
+		template.mix(Encoding.class);
+		template.mix(Request.class);
+
+		Request request = template.bind(new Encoding("UTF-8"), new RealRequest("/a"));
+		((Rebindable) request).reset();
+		request.getPath();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void bindWrongInstances() {
+		MixinTemplate<Request> template = new MixinTemplate<Request>(Request.class);
+		template.mix(Encoding.class);
+		template.mix(Request.class);
+		template.bind(new RealRequest("/a"), new Encoding("UTF-8"));
+	}
+
+}
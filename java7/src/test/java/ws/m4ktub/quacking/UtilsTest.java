@@ -5,6 +5,7 @@ import static org.junit.Assert.*;
 
 import org.junit.Test;
 
+import ws.m4ktub.quacking.utils.MixinPool;
 import ws.m4ktub.quacking.utils.Mixins;
 
 public class UtilsTest {
@@ -55,5 +56,43 @@ public class UtilsTest {
 		SuperDuck sd = sdMix.as(SuperDuck.class);
 		assertThat(sd.megaQuack() + " " + sd.superPunch(), equalTo("mega quack wonder punch"));
 	}
-	
+
+	@Test
+	public void mixingBuild() {
+		Mixin sdMix = Mixins.mix(new WonderDuck()).rename("megaQuack", "superPunch").mix(new BoxerDuck()).build(SuperDuck.class);
+		assertTrue(sdMix.isFrozen());
+
+		SuperDuck sd = sdMix.as(SuperDuck.class);
+		assertThat(sd.megaQuack() + " " + sd.superPunch(), equalTo("wonder punch wonder punch"));
+	}
+
+	@Test
+	public void poolReuse() {
+		MixinTemplate<SuperDuck> template = new MixinTemplate<SuperDuck>(SuperDuck.class);
+		template.mix(LoudDuck.class);
+		template.mix(BoxerDuck.class);
+
+		MixinPool<SuperDuck> pool = new MixinPool<SuperDuck>(template);
+		SuperDuck first = pool.acquire(new LoudDuck(), new BoxerDuck());
+		assertThat(first.megaQuack(), equalTo("mega quack"));
+		pool.release(first);
+		assertFalse(((Rebindable) first).isBound());
+
+		SuperDuck second = pool.acquire(new LoudDuck(), new BoxerDuck());
+		assertSame(first, second);
+		assertThat(second.superPunch(), equalTo("super punch"));
+		assertNotSame(second, pool.acquire(new LoudDuck(), new BoxerDuck()));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void poolReleaseTwice() {
+		MixinTemplate<SuperDuck> template = new MixinTemplate<SuperDuck>(SuperDuck.class);
+		template.mix(LoudDuck.class);
+
+		MixinPool<SuperDuck> pool = new MixinPool<SuperDuck>(template);
+		SuperDuck duck = pool.acquire(new LoudDuck());
+		pool.release(duck);
+		pool.release(duck);
+	}
+
 }